@@ -0,0 +1,256 @@
+package org.codelibs.fesen.fess.benchmark;
+
+import static org.codelibs.fesen.runner.FesenRunner.newConfigs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.codelibs.fesen.cluster.service.ClusterService;
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.index.Index;
+import org.codelibs.fesen.index.analysis.AnalyzerComponents;
+import org.codelibs.fesen.index.analysis.AnalyzerComponentsProvider;
+import org.codelibs.fesen.index.analysis.CharFilterFactory;
+import org.codelibs.fesen.index.analysis.NamedAnalyzer;
+import org.codelibs.fesen.index.analysis.TokenFilterFactory;
+import org.codelibs.fesen.indices.IndicesService;
+import org.codelibs.fesen.runner.FesenRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures each fess_* component in a single node cluster.
+ * Delegates are resolved from the plugins listed in -Dbenchmark.plugins; without them, the fallback path is measured.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AnalysisBenchmark {
+
+    private static final String INDEX = "benchmark";
+
+    private static final String FIELD = "content";
+
+    @Param({ "fess_japanese_tokenizer", "fess_japanese_iteration_mark", "fess_japanese_baseform", "fess_japanese_part_of_speech",
+            "fess_japanese_readingform", "fess_japanese_stemmer", "fess_korean_tokenizer", "fess_korean_tokenizer_eojeol_cache",
+            "fess_korean_tokenizer_pooled", "fess_vietnamese_tokenizer", "fess_simplified_chinese_tokenizer",
+            "fess_simplified_chinese_tokenizer_pooled", "cjk_bigram",
+            "fess_traditional_chinese_convert", "fess_japanese_chain", "fess_japanese_analyzer",
+            "fess_multilingual_tokenizer" })
+    public String component;
+
+    private FesenRunner runner;
+
+    private NamedAnalyzer analyzer;
+
+    private AnalyzerComponents components;
+
+    private String[] documents;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final List<String> pluginTypes = new ArrayList<>();
+        pluginTypes.add("org.codelibs.fesen.fess.FessAnalysisPlugin");
+        for (final String pluginType : Strings.splitStringByCommaToArray(System.getProperty("benchmark.plugins"))) {
+            pluginTypes.add(pluginType.trim());
+        }
+        runner = new FesenRunner();
+        runner.onBuild((number, settingsBuilder) -> {
+            settingsBuilder.put("discovery.type", "single-node");
+        }).build(newConfigs().clusterName("fess-analysis-benchmark").numOfNode(1).pluginTypes(String.join(",", pluginTypes)));
+        runner.ensureYellow();
+
+        final String prefix = "index.analysis.analyzer." + component;
+        final Settings.Builder builder = Settings.builder()//
+                .put("index.number_of_shards", 1)//
+                .put("index.number_of_replicas", 0)//
+                .put(prefix + ".type", "custom");
+        final String corpus;
+        switch (component) {
+        case "fess_japanese_tokenizer":
+        case "fess_korean_tokenizer":
+        case "fess_vietnamese_tokenizer":
+        case "fess_simplified_chinese_tokenizer":
+            builder.put(prefix + ".tokenizer", component);
+            corpus = getCorpus(component);
+            break;
+        case "fess_korean_tokenizer_eojeol_cache":
+            // the same tokenizer replaying the tokens of frequent eojeol
+            builder.put("index.analysis.tokenizer." + component + ".type", "fess_korean_tokenizer")//
+                    .put("index.analysis.tokenizer." + component + ".eojeol_cache_size", 100_000)//
+                    .put(prefix + ".tokenizer", component);
+            corpus = "ko";
+            break;
+        case "fess_korean_tokenizer_pooled":
+        case "fess_simplified_chinese_tokenizer_pooled":
+            // the same tokenizer through a PooledTokenizer, which copies the attributes of each token
+            final String type = component.substring(0, component.length() - "_pooled".length());
+            builder.put("index.analysis.tokenizer." + component + ".type", type)//
+                    .put("index.analysis.tokenizer." + component + ".tokenizer_pool_size", 4)//
+                    .put(prefix + ".tokenizer", component);
+            corpus = getCorpus(type);
+            break;
+        case "cjk_bigram":
+            // the usual baseline for fess_simplified_chinese_tokenizer
+            builder.put(prefix + ".tokenizer", "standard").putList(prefix + ".filter", "cjk_width", "cjk_bigram");
+            corpus = "zh_cn";
+            break;
+        case "fess_japanese_iteration_mark":
+            builder.put(prefix + ".tokenizer", "fess_japanese_tokenizer").putList(prefix + ".char_filter", component);
+            corpus = "ja";
+            break;
+        case "fess_traditional_chinese_convert":
+            // the built-in engine, as STConvert is the default
+            builder.put("index.analysis.char_filter." + component + ".type", component)//
+                    .put("index.analysis.char_filter." + component + ".engine", "builtin")//
+                    .put(prefix + ".tokenizer", "standard").putList(prefix + ".char_filter", component);
+            corpus = "zh_tw";
+            break;
+        case "fess_japanese_chain":
+            // the stacked chain that fess_japanese_analyzer fuses
+            builder.put(prefix + ".tokenizer", "fess_japanese_tokenizer").putList(prefix + ".filter", "fess_japanese_baseform",
+                    "fess_japanese_part_of_speech", "fess_japanese_readingform", "fess_japanese_stemmer");
+            corpus = "ja";
+            break;
+        case "fess_japanese_analyzer":
+            builder.put(prefix + ".type", component);
+            corpus = "ja";
+            break;
+        case "fess_multilingual_tokenizer":
+            builder.put(prefix + ".tokenizer", component);
+            corpus = "ja,ko,zh_cn,vi";
+            break;
+        default:
+            builder.put(prefix + ".tokenizer", "fess_japanese_tokenizer").putList(prefix + ".filter", component);
+            corpus = "ja";
+            break;
+        }
+        runner.createIndex(INDEX, builder.build());
+        runner.ensureYellow(INDEX);
+
+        final Index index = runner.getInstance(ClusterService.class).state().metadata().index(INDEX).getIndex();
+        analyzer = runner.getInstance(IndicesService.class).indexServiceSafe(index).getIndexAnalyzers().get(component);
+        // a fused analyzer does not expose its components
+        components = analyzer.analyzer() instanceof AnalyzerComponentsProvider
+                ? ((AnalyzerComponentsProvider) analyzer.analyzer()).getComponents()
+                : null;
+        documents = loadCorpus(corpus);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        runner.close();
+        runner.clean();
+    }
+
+    private static String getCorpus(final String component) {
+        switch (component) {
+        case "fess_korean_tokenizer":
+            return "ko";
+        case "fess_vietnamese_tokenizer":
+            return "vi";
+        case "fess_simplified_chinese_tokenizer":
+            return "zh_cn";
+        default:
+            return "ja";
+        }
+    }
+
+    /**
+     * Loads the corpus of each comma-separated language, joining their i-th lines into one mixed-language document.
+     */
+    private static String[] loadCorpus(final String langs) throws IOException {
+        final String[] langList = langs.split(",");
+        final String[] mixed = loadLines(langList[0]);
+        for (int i = 1; i < langList.length; i++) {
+            final String[] lines = loadLines(langList[i]);
+            for (int j = 0; j < mixed.length; j++) {
+                mixed[j] = mixed[j] + " " + lines[j % lines.length];
+            }
+        }
+        return mixed;
+    }
+
+    private static String[] loadLines(final String lang) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (InputStream in = AnalysisBenchmark.class.getResourceAsStream("/corpus/" + lang + ".txt");
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Cost of building the char filter, tokenizer and token filter chain for one field.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void create(final Blackhole blackhole) {
+        if (components == null) {
+            return;
+        }
+        Reader reader = new StringReader("");
+        for (final CharFilterFactory charFilter : components.getCharFilters()) {
+            reader = charFilter.create(reader);
+        }
+        TokenStream stream = components.getTokenizerFactory().create();
+        for (final TokenFilterFactory tokenFilter : components.getTokenFilters()) {
+            stream = tokenFilter.create(stream);
+        }
+        blackhole.consume(reader);
+        blackhole.consume(stream);
+    }
+
+    /**
+     * Documents per second through the analyzer, reusing components as indexing does.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int tokenize() throws IOException {
+        final String document = documents[next];
+        next = (next + 1) % documents.length;
+        int length = 0;
+        try (TokenStream stream = analyzer.tokenStream(FIELD, document)) {
+            final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                length += termAtt.length();
+            }
+            stream.end();
+        }
+        return length;
+    }
+}
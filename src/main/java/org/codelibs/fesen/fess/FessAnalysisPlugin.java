@@ -1,23 +1,40 @@
 package org.codelibs.fesen.fess;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
+import org.apache.lucene.analysis.Analyzer;
+import org.codelibs.fesen.action.ActionRequest;
+import org.codelibs.fesen.action.ActionResponse;
 import org.codelibs.fesen.client.Client;
 import org.codelibs.fesen.cluster.metadata.IndexNameExpressionResolver;
+import org.codelibs.fesen.cluster.node.DiscoveryNodes;
 import org.codelibs.fesen.cluster.service.ClusterService;
 import org.codelibs.fesen.common.component.LifecycleComponent;
 import org.codelibs.fesen.common.io.stream.NamedWriteableRegistry;
+import org.codelibs.fesen.common.settings.ClusterSettings;
+import org.codelibs.fesen.common.settings.IndexScopedSettings;
+import org.codelibs.fesen.common.settings.Setting;
 import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.settings.SettingsFilter;
+import org.codelibs.fesen.common.util.concurrent.EsExecutors;
 import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
+import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.env.Environment;
 import org.codelibs.fesen.env.NodeEnvironment;
+import org.codelibs.fesen.fess.action.FessAnalysisStatsAction;
+import org.codelibs.fesen.fess.action.FessBatchAnalyzeAction;
+import org.codelibs.fesen.fess.action.TransportFessAnalysisStatsAction;
+import org.codelibs.fesen.fess.action.TransportFessBatchAnalyzeAction;
 import org.codelibs.fesen.fess.index.analysis.ChineseTokenizerFactory;
+import org.codelibs.fesen.fess.index.analysis.JapaneseAnalyzerProvider;
 import org.codelibs.fesen.fess.index.analysis.JapaneseBaseFormFilterFactory;
 import org.codelibs.fesen.fess.index.analysis.JapaneseIterationMarkCharFilterFactory;
 import org.codelibs.fesen.fess.index.analysis.JapaneseKatakanaStemmerFactory;
@@ -25,28 +42,55 @@ import org.codelibs.fesen.fess.index.analysis.JapanesePartOfSpeechFilterFactory;
 import org.codelibs.fesen.fess.index.analysis.JapaneseReadingFormFilterFactory;
 import org.codelibs.fesen.fess.index.analysis.JapaneseTokenizerFactory;
 import org.codelibs.fesen.fess.index.analysis.KoreanTokenizerFactory;
+import org.codelibs.fesen.fess.index.analysis.MultilingualTokenizerFactory;
+import org.codelibs.fesen.fess.index.analysis.PreAnalyzedTokenizerFactory;
 import org.codelibs.fesen.fess.index.analysis.ReloadableJapaneseTokenizerFactory;
 import org.codelibs.fesen.fess.index.analysis.TraditionalChineseConvertCharFilterFactory;
 import org.codelibs.fesen.fess.index.analysis.VietnameseTokenizerFactory;
+import org.codelibs.fesen.fess.ingest.FessAnalyzeProcessor;
+import org.codelibs.fesen.fess.rest.RestFessAnalysisStatsAction;
+import org.codelibs.fesen.fess.rest.RestFessBatchAnalyzeAction;
+import org.codelibs.fesen.fess.service.AnalysisWarmer;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.index.Index;
+import org.codelibs.fesen.index.IndexModule;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AnalyzerProvider;
 import org.codelibs.fesen.index.analysis.CharFilterFactory;
 import org.codelibs.fesen.index.analysis.TokenFilterFactory;
 import org.codelibs.fesen.index.analysis.TokenizerFactory;
+import org.codelibs.fesen.index.shard.IndexEventListener;
+import org.codelibs.fesen.indices.cluster.IndicesClusterStateService.AllocatedIndices.IndexRemovalReason;
 import org.codelibs.fesen.indices.SystemIndexDescriptor;
 import org.codelibs.fesen.indices.analysis.AnalysisModule.AnalysisProvider;
+import org.codelibs.fesen.ingest.Processor;
+import org.codelibs.fesen.plugins.ActionPlugin;
 import org.codelibs.fesen.plugins.AnalysisPlugin;
+import org.codelibs.fesen.plugins.IngestPlugin;
 import org.codelibs.fesen.plugins.MapperPlugin;
 import org.codelibs.fesen.plugins.Plugin;
 import org.codelibs.fesen.plugins.SystemIndexPlugin;
 import org.codelibs.fesen.repositories.RepositoriesService;
+import org.codelibs.fesen.rest.RestController;
+import org.codelibs.fesen.rest.RestHandler;
 import org.codelibs.fesen.script.ScriptService;
+import org.codelibs.fesen.threadpool.ExecutorBuilder;
+import org.codelibs.fesen.threadpool.FixedExecutorBuilder;
+import org.codelibs.fesen.threadpool.ScalingExecutorBuilder;
 import org.codelibs.fesen.threadpool.ThreadPool;
 import org.codelibs.fesen.watcher.ResourceWatcherService;
 
-public class FessAnalysisPlugin extends Plugin implements AnalysisPlugin, MapperPlugin, SystemIndexPlugin {
+public class FessAnalysisPlugin extends Plugin implements ActionPlugin, AnalysisPlugin, IngestPlugin, MapperPlugin,
+        SystemIndexPlugin {
+
+    public static final String RELOAD_THREAD_POOL_NAME = "fess_analysis_reload";
+
+    public static final String ANALYZE_THREAD_POOL_NAME = "fess_analyze";
 
     private final PluginComponent pluginComponent = new PluginComponent();
 
+    private FessAnalyzeProcessor.Factory analyzeProcessorFactory;
+
     @Override
     public Collection<Class<? extends LifecycleComponent>> getGuiceServiceClasses() {
         final Collection<Class<? extends LifecycleComponent>> services = new ArrayList<>();
@@ -61,10 +105,58 @@ public class FessAnalysisPlugin extends Plugin implements AnalysisPlugin, Mapper
             final NamedWriteableRegistry namedWriteableRegistry, final IndexNameExpressionResolver indexNameExpressionResolver,
             final Supplier<RepositoriesService> repositoriesServiceSupplier) {
         final Collection<Object> components = new ArrayList<>();
+        pluginComponent.setThreadPool(threadPool);
         components.add(pluginComponent);
         return components;
     }
 
+    @Override
+    public List<Setting<?>> getSettings() {
+        return Arrays.asList(//
+                AnalysisWarmer.WARMUP_ENABLED_SETTING, //
+                AnalysisWarmer.WARMUP_PARALLELISM_SETTING, //
+                TransportFessBatchAnalyzeAction.MAX_TEXTS_SETTING, //
+                TransportFessBatchAnalyzeAction.MAX_TOTAL_TOKEN_COUNT_SETTING);
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(final Settings settings) {
+        final List<ExecutorBuilder<?>> executorBuilders = new ArrayList<>();
+        executorBuilders.add(new ScalingExecutorBuilder(RELOAD_THREAD_POOL_NAME, 1, 1, TimeValue.timeValueMinutes(5)));
+        executorBuilders.add(new FixedExecutorBuilder(settings, ANALYZE_THREAD_POOL_NAME, EsExecutors.allocatedProcessors(settings), 1000,
+                "thread_pool." + ANALYZE_THREAD_POOL_NAME));
+        return executorBuilders;
+    }
+
+    @Override
+    public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
+        return Arrays.asList(//
+                new ActionHandler<>(FessAnalysisStatsAction.INSTANCE, TransportFessAnalysisStatsAction.class), //
+                new ActionHandler<>(FessBatchAnalyzeAction.INSTANCE, TransportFessBatchAnalyzeAction.class));
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(final Settings settings, final RestController restController,
+            final ClusterSettings clusterSettings, final IndexScopedSettings indexScopedSettings, final SettingsFilter settingsFilter,
+            final IndexNameExpressionResolver indexNameExpressionResolver, final Supplier<DiscoveryNodes> nodesInCluster) {
+        return Arrays.asList(//
+                new RestFessAnalysisStatsAction(), //
+                new RestFessBatchAnalyzeAction(settings));
+    }
+
+    @Override
+    public void onIndexModule(final IndexModule indexModule) {
+        indexModule.addIndexEventListener(new IndexEventListener() {
+            @Override
+            public void afterIndexRemoved(final Index index, final IndexSettings indexSettings, final IndexRemovalReason reason) {
+                final FessAnalysisService fessAnalysisService = pluginComponent.getFessAnalysisService();
+                if (fessAnalysisService != null) {
+                    fessAnalysisService.releaseSharedInstances(index);
+                }
+            }
+        });
+    }
+
     @Override
     public Map<String, AnalysisProvider<CharFilterFactory>> getCharFilters() {
         final Map<String, AnalysisProvider<CharFilterFactory>> extra = new HashMap<>();
@@ -106,9 +198,37 @@ public class FessAnalysisPlugin extends Plugin implements AnalysisPlugin, Mapper
                 name, settings, pluginComponent.getFessAnalysisService()));
         extra.put("fess_simplified_chinese_tokenizer", (indexSettings, env, name, settings) -> new ChineseTokenizerFactory(indexSettings,
                 env, name, settings, pluginComponent.getFessAnalysisService()));
+        extra.put("fess_multilingual_tokenizer", (indexSettings, env, name, settings) -> new MultilingualTokenizerFactory(indexSettings,
+                env, name, settings, pluginComponent.getFessAnalysisService()));
+        extra.put("fess_pre_analyzed_tokenizer", (indexSettings, env, name, settings) -> new PreAnalyzedTokenizerFactory(indexSettings,
+                env, name, settings, pluginComponent.getFessAnalysisService()));
+        return extra;
+    }
+
+    @Override
+    public Map<String, AnalysisProvider<AnalyzerProvider<? extends Analyzer>>> getAnalyzers() {
+        final Map<String, AnalysisProvider<AnalyzerProvider<? extends Analyzer>>> extra = new HashMap<>();
+        extra.put("fess_japanese_analyzer", (indexSettings, env, name, settings) -> new JapaneseAnalyzerProvider(indexSettings, env, name,
+                settings, pluginComponent.getFessAnalysisService()));
         return extra;
     }
 
+    @Override
+    public Map<String, Processor.Factory> getProcessors(final Processor.Parameters parameters) {
+        analyzeProcessorFactory = new FessAnalyzeProcessor.Factory(parameters.analysisRegistry, parameters.ingestService);
+        // the pipelines are created again by the ingest service before the listeners are notified
+        parameters.ingestService.getClusterService().addListener(analyzeProcessorFactory);
+        pluginComponent.setAnalyzeProcessorFactory(analyzeProcessorFactory);
+        return Collections.singletonMap(FessAnalyzeProcessor.TYPE, analyzeProcessorFactory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (analyzeProcessorFactory != null) {
+            analyzeProcessorFactory.close();
+        }
+    }
+
     @Override
     public Collection<SystemIndexDescriptor> getSystemIndexDescriptors(final Settings settings) {
         return Collections.unmodifiableList(Arrays.asList(//
@@ -125,6 +245,10 @@ public class FessAnalysisPlugin extends Plugin implements AnalysisPlugin, Mapper
     public static class PluginComponent {
         private FessAnalysisService fessAnalysisService;
 
+        private ThreadPool threadPool;
+
+        private FessAnalyzeProcessor.Factory analyzeProcessorFactory;
+
         public FessAnalysisService getFessAnalysisService() {
             return fessAnalysisService;
         }
@@ -132,5 +256,21 @@ public class FessAnalysisPlugin extends Plugin implements AnalysisPlugin, Mapper
         public void setFessAnalysisService(final FessAnalysisService fessAnalysisService) {
             this.fessAnalysisService = fessAnalysisService;
         }
+
+        public ThreadPool getThreadPool() {
+            return threadPool;
+        }
+
+        public void setThreadPool(final ThreadPool threadPool) {
+            this.threadPool = threadPool;
+        }
+
+        public FessAnalyzeProcessor.Factory getAnalyzeProcessorFactory() {
+            return analyzeProcessorFactory;
+        }
+
+        public void setAnalyzeProcessorFactory(final FessAnalyzeProcessor.Factory analyzeProcessorFactory) {
+            this.analyzeProcessorFactory = analyzeProcessorFactory;
+        }
     }
 }
@@ -0,0 +1,46 @@
+package org.codelibs.fesen.fess.action;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.codelibs.fesen.action.support.nodes.BaseNodeResponse;
+import org.codelibs.fesen.cluster.node.DiscoveryNode;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.xcontent.ToXContentFragment;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+
+public class FessAnalysisNodeStats extends BaseNodeResponse implements ToXContentFragment {
+
+    private final Map<String, Object> stats;
+
+    public FessAnalysisNodeStats(final DiscoveryNode node, final Map<String, Object> stats) {
+        super(node);
+        this.stats = stats;
+    }
+
+    public FessAnalysisNodeStats(final StreamInput in) throws IOException {
+        super(in);
+        stats = in.readMap();
+    }
+
+    public Map<String, Object> getStats() {
+        return stats;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeMap(stats);
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        builder.field("name", getNode().getName());
+        builder.field("transport_address", getNode().getAddress().toString());
+        for (final Map.Entry<String, Object> entry : stats.entrySet()) {
+            builder.field(entry.getKey(), entry.getValue());
+        }
+        return builder;
+    }
+}
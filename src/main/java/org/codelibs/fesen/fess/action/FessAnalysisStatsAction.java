@@ -0,0 +1,14 @@
+package org.codelibs.fesen.fess.action;
+
+import org.codelibs.fesen.action.ActionType;
+
+public class FessAnalysisStatsAction extends ActionType<FessAnalysisStatsResponse> {
+
+    public static final FessAnalysisStatsAction INSTANCE = new FessAnalysisStatsAction();
+
+    public static final String NAME = "cluster:monitor/fess/analysis/stats";
+
+    private FessAnalysisStatsAction() {
+        super(NAME, FessAnalysisStatsResponse::new);
+    }
+}
@@ -0,0 +1,17 @@
+package org.codelibs.fesen.fess.action;
+
+import java.io.IOException;
+
+import org.codelibs.fesen.action.support.nodes.BaseNodesRequest;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+
+public class FessAnalysisStatsRequest extends BaseNodesRequest<FessAnalysisStatsRequest> {
+
+    public FessAnalysisStatsRequest(final String... nodesIds) {
+        super(nodesIds);
+    }
+
+    public FessAnalysisStatsRequest(final StreamInput in) throws IOException {
+        super(in);
+    }
+}
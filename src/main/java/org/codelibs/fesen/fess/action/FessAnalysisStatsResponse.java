@@ -0,0 +1,46 @@
+package org.codelibs.fesen.fess.action;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.codelibs.fesen.action.FailedNodeException;
+import org.codelibs.fesen.action.support.nodes.BaseNodesResponse;
+import org.codelibs.fesen.cluster.ClusterName;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.xcontent.ToXContentFragment;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+
+public class FessAnalysisStatsResponse extends BaseNodesResponse<FessAnalysisNodeStats> implements ToXContentFragment {
+
+    public FessAnalysisStatsResponse(final StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public FessAnalysisStatsResponse(final ClusterName clusterName, final List<FessAnalysisNodeStats> nodes,
+            final List<FailedNodeException> failures) {
+        super(clusterName, nodes, failures);
+    }
+
+    @Override
+    protected List<FessAnalysisNodeStats> readNodesFrom(final StreamInput in) throws IOException {
+        return in.readList(FessAnalysisNodeStats::new);
+    }
+
+    @Override
+    protected void writeNodesTo(final StreamOutput out, final List<FessAnalysisNodeStats> nodes) throws IOException {
+        out.writeList(nodes);
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        builder.startObject("nodes");
+        for (final FessAnalysisNodeStats nodeStats : getNodes()) {
+            builder.startObject(nodeStats.getNode().getId());
+            nodeStats.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+}
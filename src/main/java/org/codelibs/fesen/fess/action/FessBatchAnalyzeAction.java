@@ -0,0 +1,14 @@
+package org.codelibs.fesen.fess.action;
+
+import org.codelibs.fesen.action.ActionType;
+
+public class FessBatchAnalyzeAction extends ActionType<FessBatchAnalyzeResponse> {
+
+    public static final FessBatchAnalyzeAction INSTANCE = new FessBatchAnalyzeAction();
+
+    public static final String NAME = "indices:admin/fess/analyze/batch";
+
+    private FessBatchAnalyzeAction() {
+        super(NAME, FessBatchAnalyzeResponse::new);
+    }
+}
@@ -0,0 +1,85 @@
+package org.codelibs.fesen.fess.action;
+
+import static org.codelibs.fesen.action.ValidateActions.addValidationError;
+
+import java.io.IOException;
+
+import org.codelibs.fesen.action.ActionRequestValidationException;
+import org.codelibs.fesen.action.support.single.shard.SingleShardRequest;
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.settings.Settings;
+
+public class FessBatchAnalyzeRequest extends SingleShardRequest<FessBatchAnalyzeRequest> {
+
+    private String analyzer;
+
+    private String[] texts = Strings.EMPTY_ARRAY;
+
+    // the limit of the coordinating node, which validates the request before routing it
+    private int maxTexts = TransportFessBatchAnalyzeAction.MAX_TEXTS_SETTING.get(Settings.EMPTY);
+
+    public FessBatchAnalyzeRequest() {
+    }
+
+    public FessBatchAnalyzeRequest(final String index) {
+        super(index);
+    }
+
+    public FessBatchAnalyzeRequest(final StreamInput in) throws IOException {
+        super(in);
+        analyzer = in.readString();
+        texts = in.readStringArray();
+    }
+
+    public String analyzer() {
+        return analyzer;
+    }
+
+    public FessBatchAnalyzeRequest analyzer(final String analyzer) {
+        this.analyzer = analyzer;
+        return this;
+    }
+
+    public String[] texts() {
+        return texts;
+    }
+
+    public FessBatchAnalyzeRequest texts(final String... texts) {
+        this.texts = texts;
+        return this;
+    }
+
+    public int maxTexts() {
+        return maxTexts;
+    }
+
+    public FessBatchAnalyzeRequest maxTexts(final int maxTexts) {
+        this.maxTexts = maxTexts;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (analyzer == null) {
+            validationException = addValidationError("analyzer is missing", validationException);
+        }
+        if (texts == null || texts.length == 0) {
+            validationException = addValidationError("texts is missing", validationException);
+        } else if (texts.length > maxTexts) {
+            validationException = addValidationError("the number of texts [" + texts.length + "] exceeds the allowed maximum of ["
+                    + maxTexts + "]. This limit can be set by changing the [" + TransportFessBatchAnalyzeAction.MAX_TEXTS_SETTING.getKey()
+                    + "] node setting.", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(analyzer);
+        out.writeStringArray(texts);
+    }
+}
@@ -0,0 +1,137 @@
+package org.codelibs.fesen.fess.action;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.codelibs.fesen.action.ActionResponse;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.xcontent.ToXContentObject;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+
+public class FessBatchAnalyzeResponse extends ActionResponse implements ToXContentObject {
+
+    private final List<List<Token>> results;
+
+    public FessBatchAnalyzeResponse(final List<List<Token>> results) {
+        this.results = results;
+    }
+
+    public FessBatchAnalyzeResponse(final StreamInput in) throws IOException {
+        super(in);
+        results = in.readList(i -> i.readList(Token::new));
+    }
+
+    /**
+     * Returns the tokens of each text in the order of the request.
+     */
+    public List<List<Token>> getResults() {
+        return results;
+    }
+
+    @Override
+    public void writeTo(final StreamOutput out) throws IOException {
+        out.writeCollection(results, StreamOutput::writeList);
+    }
+
+    @Override
+    public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+        builder.startObject();
+        builder.startArray("results");
+        for (final List<Token> tokens : results) {
+            builder.startObject();
+            builder.startArray("tokens");
+            for (final Token token : tokens) {
+                token.toXContent(builder, params);
+            }
+            builder.endArray();
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+        return builder;
+    }
+
+    public static class Token implements Writeable, ToXContentObject {
+        private final String term;
+
+        private final int startOffset;
+
+        private final int endOffset;
+
+        private final int position;
+
+        private final int positionLength;
+
+        private final String type;
+
+        public Token(final String term, final int position, final int startOffset, final int endOffset, final int positionLength,
+                final String type) {
+            this.term = term;
+            this.position = position;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.positionLength = positionLength;
+            this.type = type;
+        }
+
+        Token(final StreamInput in) throws IOException {
+            term = in.readString();
+            startOffset = in.readInt();
+            endOffset = in.readInt();
+            position = in.readVInt();
+            positionLength = in.readVInt();
+            type = in.readOptionalString();
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+        public int getEndOffset() {
+            return endOffset;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public int getPositionLength() {
+            return positionLength;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public void writeTo(final StreamOutput out) throws IOException {
+            out.writeString(term);
+            out.writeInt(startOffset);
+            out.writeInt(endOffset);
+            out.writeVInt(position);
+            out.writeVInt(positionLength);
+            out.writeOptionalString(type);
+        }
+
+        @Override
+        public XContentBuilder toXContent(final XContentBuilder builder, final Params params) throws IOException {
+            builder.startObject();
+            builder.field("token", term);
+            builder.field("start_offset", startOffset);
+            builder.field("end_offset", endOffset);
+            builder.field("type", type);
+            builder.field("position", position);
+            if (positionLength > 1) {
+                builder.field("positionLength", positionLength);
+            }
+            builder.endObject();
+            return builder;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.codelibs.fesen.fess.action;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.codelibs.fesen.action.FailedNodeException;
+import org.codelibs.fesen.action.support.ActionFilters;
+import org.codelibs.fesen.action.support.nodes.BaseNodeRequest;
+import org.codelibs.fesen.action.support.nodes.TransportNodesAction;
+import org.codelibs.fesen.cluster.service.ClusterService;
+import org.codelibs.fesen.common.inject.Inject;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.fess.FessAnalysisPlugin;
+import org.codelibs.fesen.threadpool.ThreadPool;
+import org.codelibs.fesen.transport.TransportService;
+
+public class TransportFessAnalysisStatsAction extends TransportNodesAction<FessAnalysisStatsRequest, FessAnalysisStatsResponse, //
+        TransportFessAnalysisStatsAction.NodeRequest, FessAnalysisNodeStats> {
+
+    private final FessAnalysisPlugin.PluginComponent pluginComponent;
+
+    @Inject
+    public TransportFessAnalysisStatsAction(final ThreadPool threadPool, final ClusterService clusterService,
+            final TransportService transportService, final ActionFilters actionFilters,
+            final FessAnalysisPlugin.PluginComponent pluginComponent) {
+        super(FessAnalysisStatsAction.NAME, threadPool, clusterService, transportService, actionFilters, FessAnalysisStatsRequest::new,
+                NodeRequest::new, ThreadPool.Names.MANAGEMENT, FessAnalysisNodeStats.class);
+        // the service itself is not a singleton binding, so it is looked up through the plugin component
+        this.pluginComponent = pluginComponent;
+    }
+
+    @Override
+    protected FessAnalysisStatsResponse newResponse(final FessAnalysisStatsRequest request, final List<FessAnalysisNodeStats> responses,
+            final List<FailedNodeException> failures) {
+        return new FessAnalysisStatsResponse(clusterService.getClusterName(), responses, failures);
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(final FessAnalysisStatsRequest request) {
+        return new NodeRequest();
+    }
+
+    @Override
+    protected FessAnalysisNodeStats newNodeResponse(final StreamInput in) throws IOException {
+        return new FessAnalysisNodeStats(in);
+    }
+
+    @Override
+    protected FessAnalysisNodeStats nodeOperation(final NodeRequest request) {
+        return new FessAnalysisNodeStats(clusterService.localNode(), pluginComponent.getFessAnalysisService().getStats());
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        public NodeRequest() {
+        }
+
+        public NodeRequest(final StreamInput in) throws IOException {
+            super(in);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package org.codelibs.fesen.fess.action;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.codelibs.fesen.FesenException;
+import org.codelibs.fesen.action.support.ActionFilters;
+import org.codelibs.fesen.action.support.single.shard.TransportSingleShardAction;
+import org.codelibs.fesen.cluster.ClusterState;
+import org.codelibs.fesen.cluster.block.ClusterBlockException;
+import org.codelibs.fesen.cluster.metadata.IndexNameExpressionResolver;
+import org.codelibs.fesen.cluster.routing.ShardsIterator;
+import org.codelibs.fesen.cluster.service.ClusterService;
+import org.codelibs.fesen.common.inject.Inject;
+import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.fess.FessAnalysisPlugin;
+import org.codelibs.fesen.fess.action.FessBatchAnalyzeResponse.Token;
+import org.codelibs.fesen.index.IndexService;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AnalysisRegistry;
+import org.codelibs.fesen.index.shard.ShardId;
+import org.codelibs.fesen.indices.IndicesService;
+import org.codelibs.fesen.threadpool.ThreadPool;
+import org.codelibs.fesen.transport.TransportService;
+
+/**
+ * Analyzes many texts with one analyzer in a single request.
+ * The texts are split across the fess_analyze pool, and each thread reuses the analyzer's token streams.
+ * A request is limited in the number of texts and in the tokens of all its texts, besides the tokens of each text.
+ */
+public class TransportFessBatchAnalyzeAction extends TransportSingleShardAction<FessBatchAnalyzeRequest, FessBatchAnalyzeResponse> {
+
+    public static final Setting<Integer> MAX_TEXTS_SETTING = Setting.intSetting("fess.analysis.batch.max_texts", 10_000, 1,
+            Property.NodeScope);
+
+    public static final Setting<Long> MAX_TOTAL_TOKEN_COUNT_SETTING =
+            Setting.longSetting("fess.analysis.batch.max_total_token_count", 1_000_000L, 1L, Property.NodeScope);
+
+    // texts analyzed by one task at least, so that short batches are not scattered
+    private static final int MIN_TEXTS_PER_TASK = 16;
+
+    private final Settings settings;
+
+    private final int maxTexts;
+
+    private final long maxTotalTokenCount;
+
+    private final IndicesService indicesService;
+
+    private final AnalysisRegistry analysisRegistry;
+
+    @Inject
+    public TransportFessBatchAnalyzeAction(final Settings settings, final ThreadPool threadPool, final ClusterService clusterService,
+            final TransportService transportService, final IndicesService indicesService, final AnalysisRegistry analysisRegistry,
+            final ActionFilters actionFilters, final IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(FessBatchAnalyzeAction.NAME, threadPool, clusterService, transportService, actionFilters, indexNameExpressionResolver,
+                FessBatchAnalyzeRequest::new, ThreadPool.Names.ANALYZE);
+        this.settings = settings;
+        maxTexts = MAX_TEXTS_SETTING.get(settings);
+        maxTotalTokenCount = MAX_TOTAL_TOKEN_COUNT_SETTING.get(settings);
+        this.indicesService = indicesService;
+        this.analysisRegistry = analysisRegistry;
+    }
+
+    @Override
+    protected Writeable.Reader<FessBatchAnalyzeResponse> getResponseReader() {
+        return FessBatchAnalyzeResponse::new;
+    }
+
+    @Override
+    protected boolean resolveIndex(final FessBatchAnalyzeRequest request) {
+        return request.index() != null;
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(final ClusterState state, final InternalRequest request) {
+        if (request.concreteIndex() != null) {
+            return super.checkRequestBlock(state, request);
+        }
+        return null;
+    }
+
+    @Override
+    protected ShardsIterator shards(final ClusterState state, final InternalRequest request) {
+        if (request.concreteIndex() == null) {
+            // just execute locally....
+            return null;
+        }
+        return state.routingTable().index(request.concreteIndex()).randomAllActiveShardsIt();
+    }
+
+    @Override
+    protected FessBatchAnalyzeResponse shardOperation(final FessBatchAnalyzeRequest request, final ShardId shardId) throws IOException {
+        // validated on the coordinating node against its own limit
+        if (request.texts().length > maxTexts) {
+            throw new IllegalArgumentException("The number of texts [" + request.texts().length + "] exceeds the allowed maximum of ["
+                    + maxTexts + "]. This limit can be set by changing the [" + MAX_TEXTS_SETTING.getKey() + "] node setting.");
+        }
+        final IndexService indexService = shardId != null ? indicesService.indexServiceSafe(shardId.getIndex()) : null;
+        Analyzer analyzer = null;
+        if (indexService != null) {
+            analyzer = indexService.getIndexAnalyzers().get(request.analyzer());
+        }
+        if (analyzer == null) {
+            analyzer = analysisRegistry.getAnalyzer(request.analyzer());
+        }
+        if (analyzer == null) {
+            throw new IllegalArgumentException("failed to find analyzer [" + request.analyzer() + "]");
+        }
+        final int maxTokenCount = IndexSettings.MAX_TOKEN_COUNT_SETTING
+                .get(indexService != null ? indexService.getIndexSettings().getSettings() : settings);
+        return new FessBatchAnalyzeResponse(analyze(analyzer, request.texts(), maxTokenCount));
+    }
+
+    private List<List<Token>> analyze(final Analyzer analyzer, final String[] texts, final int maxTokenCount) throws IOException {
+        // each task sets its own slots, and the futures publish them
+        final List<List<Token>> results = new ArrayList<>(Collections.nCopies(texts.length, null));
+        final AtomicLong totalTokenCount = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final int maxThreads = threadPool.info(FessAnalysisPlugin.ANALYZE_THREAD_POOL_NAME).getMax();
+        final int parallelism = Math.max(1, Math.min(maxThreads, texts.length / MIN_TEXTS_PER_TASK));
+        final ExecutorService executor = threadPool.executor(FessAnalysisPlugin.ANALYZE_THREAD_POOL_NAME);
+        final List<Future<Void>> futures = new ArrayList<>(parallelism - 1);
+        boolean completed = false;
+        try {
+            for (int i = 1; i < parallelism; i++) {
+                final int offset = i;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    analyzeTexts(analyzer, texts, offset, parallelism, maxTokenCount, totalTokenCount, cancelled, results);
+                    return null;
+                }));
+            }
+            // the calling thread takes a share instead of waiting idle
+            analyzeTexts(analyzer, texts, 0, parallelism, maxTokenCount, totalTokenCount, cancelled, results);
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FesenException("Interrupted while analyzing texts.", e);
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new FesenException("Failed to analyze texts.", cause);
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // the tasks in progress stop before their next text
+                cancelled.set(true);
+                for (final Future<Void> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+        return results;
+    }
+
+    private void analyzeTexts(final Analyzer analyzer, final String[] texts, final int offset, final int step, final int maxTokenCount,
+            final AtomicLong totalTokenCount, final AtomicBoolean cancelled, final List<List<Token>> results) throws IOException {
+        for (int i = offset; i < texts.length && !cancelled.get(); i += step) {
+            final List<Token> tokens = analyzeText(analyzer, texts[i], maxTokenCount, totalTokenCount);
+            totalTokenCount.addAndGet(tokens.size());
+            results.set(i, tokens);
+        }
+    }
+
+    private List<Token> analyzeText(final Analyzer analyzer, final String text, final int maxTokenCount, final AtomicLong totalTokenCount)
+            throws IOException {
+        final List<Token> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream("", text)) {
+            final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+            final PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+            final PositionLengthAttribute posLenAtt = stream.addAttribute(PositionLengthAttribute.class);
+            final OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+            final TypeAttribute typeAtt = stream.addAttribute(TypeAttribute.class);
+            stream.reset();
+            int position = -1;
+            while (stream.incrementToken()) {
+                if (tokens.size() >= maxTokenCount) {
+                    throw new IllegalStateException("The number of tokens produced by calling _analyze has exceeded the allowed maximum of ["
+                            + maxTokenCount + "]. This limit can be set by changing the [" + IndexSettings.MAX_TOKEN_COUNT_SETTING.getKey()
+                            + "] index level setting.");
+                }
+                // counted per text, so other tasks may overshoot by the tokens of the texts in progress
+                if (totalTokenCount.get() + tokens.size() >= maxTotalTokenCount) {
+                    throw new IllegalStateException("The number of tokens produced by the batch has exceeded the allowed maximum of ["
+                            + maxTotalTokenCount + "]. This limit can be set by changing the [" + MAX_TOTAL_TOKEN_COUNT_SETTING.getKey()
+                            + "] node setting.");
+                }
+                position += posIncAtt.getPositionIncrement();
+                tokens.add(new Token(termAtt.toString(), position, offsetAtt.startOffset(), offsetAtt.endOffset(),
+                        posLenAtt.getPositionLength(), typeAtt.type()));
+            }
+            stream.end();
+        }
+        return tokens;
+    }
+}
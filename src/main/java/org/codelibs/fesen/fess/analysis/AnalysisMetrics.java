@@ -0,0 +1,93 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the streams created by one analysis component.
+ * Each stream keeps its own counts and adds them here when it is closed.
+ */
+public class AnalysisMetrics {
+
+    // buckets of power-of-two microseconds: [0, 1), [1, 2), [2, 4), ...
+    public static final int LATENCY_BUCKETS = 32;
+
+    private final LongAdder createdStreams = new LongAdder();
+
+    private final LongAdder startedInputs = new LongAdder();
+
+    private final LongAdder completedInputs = new LongAdder();
+
+    private final LongAdder inputChars = new LongAdder();
+
+    private final LongAdder tokens = new LongAdder();
+
+    private final LongAdder timeInNanos = new LongAdder();
+
+    private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+
+    public AnalysisMetrics() {
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    public void onCreate() {
+        createdStreams.increment();
+    }
+
+    public void onStart() {
+        startedInputs.increment();
+    }
+
+    /**
+     * Records one analyzed input, from reset() to close().
+     */
+    public void onComplete(final long chars, final long tokenCount, final long nanos) {
+        completedInputs.increment();
+        if (chars > 0) {
+            inputChars.add(chars);
+        }
+        if (tokenCount > 0) {
+            tokens.add(tokenCount);
+        }
+        timeInNanos.add(nanos);
+        latency[bucket(nanos)].increment();
+    }
+
+    static int bucket(final long nanos) {
+        final long micros = nanos / 1000L;
+        return Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public long getCreatedStreams() {
+        return createdStreams.sum();
+    }
+
+    public long getCompletedInputs() {
+        return completedInputs.sum();
+    }
+
+    public long getActiveInputs() {
+        return startedInputs.sum() - completedInputs.sum();
+    }
+
+    public long getInputChars() {
+        return inputChars.sum();
+    }
+
+    public long getTokens() {
+        return tokens.sum();
+    }
+
+    public long getTimeInNanos() {
+        return timeInNanos.sum();
+    }
+
+    public long[] getLatencyHistogram() {
+        final long[] values = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            values[i] = latency[i].sum();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,132 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeSource.State;
+
+/**
+ * Wraps a tokenizer to replay the tokens of inputs found in a {@link TokenCache}.
+ * States are captured from the wrapped tokenizer, so every attribute it sets, such as part-of-speech
+ * and reading, is replayed. Inputs longer than the cache limit pass through unchanged.
+ */
+public class CachingTokenizer extends Tokenizer {
+
+    private final Tokenizer tokenizer;
+
+    private final TokenCache cache;
+
+    private final OffsetAttribute offsetAtt;
+
+    private final char[] buffer;
+
+    private String key;
+
+    private TokenCache.Entry replay;
+
+    private int replayIndex;
+
+    private List<State> recording;
+
+    public CachingTokenizer(final Tokenizer tokenizer, final TokenCache cache) {
+        this.tokenizer = tokenizer;
+        this.cache = cache;
+        final Iterator<AttributeImpl> iter = tokenizer.getAttributeImplsIterator();
+        while (iter.hasNext()) {
+            addAttributeImpl(iter.next());
+        }
+        offsetAtt = addAttribute(OffsetAttribute.class);
+        buffer = new char[cache.getMaxInputLength() + 1];
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        clearAttributes();
+        if (replay != null) {
+            if (replayIndex >= replay.tokens.length) {
+                return false;
+            }
+            tokenizer.restoreState(replay.tokens[replayIndex++]);
+        } else {
+            if (!tokenizer.incrementToken()) {
+                return false;
+            }
+            if (recording != null) {
+                recording.add(tokenizer.captureState());
+            }
+        }
+        // the wrapped tokenizer reads a copy of the input, so offsets are corrected here
+        offsetAtt.setOffset(correctOffset(offsetAtt.startOffset()), correctOffset(offsetAtt.endOffset()));
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        key = null;
+        replay = null;
+        replayIndex = 0;
+        recording = null;
+        final int length = read(input, buffer);
+        if (length < buffer.length) {
+            key = new String(buffer, 0, length);
+            replay = cache.get(key);
+            if (replay != null) {
+                return;
+            }
+            recording = new ArrayList<>();
+            tokenizer.setReader(new StringReader(key));
+        } else {
+            tokenizer.setReader(new PrefixedReader(buffer, length, input));
+        }
+        tokenizer.reset();
+    }
+
+    private static int read(final Reader reader, final char[] buf) throws IOException {
+        int length = 0;
+        while (length < buf.length) {
+            final int n = reader.read(buf, length, buf.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        if (replay != null) {
+            tokenizer.restoreState(replay.end);
+        } else {
+            tokenizer.end();
+            if (recording != null) {
+                cache.put(key, new TokenCache.Entry(recording.toArray(new State[recording.size()]), tokenizer.captureState()));
+                recording = null;
+            }
+        }
+        offsetAtt.setOffset(correctOffset(offsetAtt.startOffset()), correctOffset(offsetAtt.endOffset()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (replay == null) {
+                tokenizer.close();
+            }
+        } finally {
+            super.close();
+            key = null;
+            replay = null;
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.charfilter.BaseCharFilter;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Converts between simplified and traditional Chinese with a {@link ChineseConverter}.
+ * The input is converted block by block on buffers owned by the filter, keeping enough lookahead
+ * for the longest phrase, and offsets are corrected wherever a phrase changes length.
+ */
+public class ChineseConvertCharFilter extends BaseCharFilter {
+
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    private final ChineseConverter converter;
+
+    private final int maxKeyLength;
+
+    private final char[] inBuf;
+
+    // unconverted chars are inBuf[inStart, inEnd)
+    private int inStart;
+
+    private int inEnd;
+
+    // offset of inBuf[0] in the input
+    private int inOffset;
+
+    private boolean exhausted;
+
+    private char[] outBuf = new char[MIN_BUFFER_SIZE];
+
+    // chars to read are outBuf[outPos, outEnd)
+    private int outPos;
+
+    private int outEnd;
+
+    // offset of outBuf[0] in the output
+    private int outOffset;
+
+    public ChineseConvertCharFilter(final Reader input, final ChineseConverter converter) {
+        super(input);
+        this.converter = converter;
+        maxKeyLength = converter.getMaxKeyLength();
+        inBuf = new char[Math.max(MIN_BUFFER_SIZE, maxKeyLength * 2)];
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (outPos == outEnd && !fill()) {
+            return -1;
+        }
+        final int n = Math.min(len, outEnd - outPos);
+        System.arraycopy(outBuf, outPos, cbuf, off, n);
+        outPos += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (outPos == outEnd && !fill()) {
+            return -1;
+        }
+        return outBuf[outPos++];
+    }
+
+    private boolean fill() throws IOException {
+        outOffset += outEnd;
+        outPos = 0;
+        outEnd = 0;
+        while (outEnd == 0) {
+            // keep the unconverted lookahead at the head of the buffer
+            final int remaining = inEnd - inStart;
+            System.arraycopy(inBuf, inStart, inBuf, 0, remaining);
+            inOffset += inStart;
+            inStart = 0;
+            inEnd = remaining;
+            while (!exhausted && inEnd < inBuf.length) {
+                final int n = input.read(inBuf, inEnd, inBuf.length - inEnd);
+                if (n == -1) {
+                    exhausted = true;
+                } else {
+                    inEnd += n;
+                }
+            }
+            if (inEnd == 0) {
+                return false;
+            }
+            // a phrase starting before limit is complete in the buffer
+            convert(exhausted ? inEnd : inEnd - maxKeyLength + 1);
+        }
+        return true;
+    }
+
+    private void convert(final int limit) {
+        final char[] outputs = converter.getOutputs();
+        int pos = inStart;
+        while (pos < limit) {
+            final long match = converter.match(inBuf, pos, inEnd);
+            if (match == -1) {
+                ensureCapacity(outEnd + 1);
+                outBuf[outEnd++] = converter.convert(inBuf[pos]);
+                pos++;
+                continue;
+            }
+            final int inputLength = (int) (match >>> 32);
+            final int index = (int) match;
+            final int start = converter.getOutputStart(index);
+            final int outputLength = converter.getOutputEnd(index) - start;
+            ensureCapacity(outEnd + outputLength);
+            System.arraycopy(outputs, start, outBuf, outEnd, outputLength);
+            if (inputLength != outputLength) {
+                final int inputOffset = inOffset + pos;
+                final int outputOffset = outOffset + outEnd;
+                final int diff = inputOffset - outputOffset;
+                // chars added by a longer phrase map to the end of the input phrase
+                for (int i = Math.min(inputLength, outputLength) + 1; i <= outputLength; i++) {
+                    addOffCorrectMap(outputOffset + i, diff + inputLength - i);
+                }
+                if (outputLength < inputLength) {
+                    addOffCorrectMap(outputOffset + outputLength, diff + inputLength - outputLength);
+                }
+            }
+            outEnd += outputLength;
+            pos += inputLength;
+        }
+        inStart = pos;
+    }
+
+    private void ensureCapacity(final int size) {
+        if (size > outBuf.length) {
+            outBuf = ArrayUtil.grow(outBuf, size);
+        }
+    }
+}
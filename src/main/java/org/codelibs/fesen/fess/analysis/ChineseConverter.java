@@ -0,0 +1,175 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts between simplified and traditional Chinese with the OpenCC dictionaries.
+ * Single chars are mapped through a char-indexed table, and phrases and supplementary chars
+ * through a {@link DoubleArrayTrie}, longest match first.
+ */
+public final class ChineseConverter {
+
+    public enum Type {
+        S2T("STCharacters.txt", "STPhrases.txt"), T2S("TSCharacters.txt", "TSPhrases.txt");
+
+        private final String characters;
+
+        private final String phrases;
+
+        Type(final String characters, final String phrases) {
+            this.characters = characters;
+            this.phrases = phrases;
+        }
+
+        public static Type of(final String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final String DICTIONARY_PATH = "opencc/";
+
+    // char to converted char, 0 for chars kept as is
+    private final char[] table = new char[Character.MAX_VALUE + 1];
+
+    private final DoubleArrayTrie trie;
+
+    private final char[] outputs;
+
+    // start of each output in outputs, followed by the end of the last output
+    private final int[] outputOffsets;
+
+    private final int maxKeyLength;
+
+    private ChineseConverter(final Type type) {
+        final Map<String, String> entries = new TreeMap<>();
+        load(type.characters, entries);
+        load(type.phrases, entries);
+
+        final List<char[]> keys = new ArrayList<>(entries.size());
+        final StringBuilder buf = new StringBuilder();
+        final List<Integer> offsets = new ArrayList<>();
+        int maxLength = 1;
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            final String key = entry.getKey();
+            final String output = entry.getValue();
+            if (key.length() == 1 && output.length() == 1) {
+                table[key.charAt(0)] = output.charAt(0);
+                continue;
+            }
+            keys.add(key.toCharArray());
+            offsets.add(buf.length());
+            buf.append(output);
+            maxLength = Math.max(maxLength, key.length());
+        }
+        offsets.add(buf.length());
+
+        // TreeMap orders keys by UTF-16 code units, as the trie requires
+        final int[] values = new int[keys.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        trie = new DoubleArrayTrie(keys.toArray(new char[keys.size()][]), values);
+        outputs = buf.toString().toCharArray();
+        outputOffsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+        maxKeyLength = maxLength;
+    }
+
+    private static void load(final String name, final Map<String, String> entries) {
+        try (InputStream in = ChineseConverter.class.getResourceAsStream(DICTIONARY_PATH + name);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                final String key = line.substring(0, tab);
+                // the first candidate is the most common one
+                final int space = line.indexOf(' ', tab + 1);
+                final String output = space == -1 ? line.substring(tab + 1) : line.substring(tab + 1, space);
+                if (!output.isEmpty() && !key.equals(output)) {
+                    entries.put(key, output);
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to load " + name, e);
+        }
+    }
+
+    public static ChineseConverter getInstance(final Type type) {
+        return type == Type.S2T ? S2THolder.INSTANCE : T2SHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the length of the longest key, which is the lookahead a streaming conversion needs.
+     */
+    public int getMaxKeyLength() {
+        return maxKeyLength;
+    }
+
+    /**
+     * Returns the longest phrase in input[offset, limit) starting at offset, packed as (length &lt;&lt; 32 | index),
+     * or -1 if the char at offset is converted by {@link #convert(char)}.
+     */
+    long match(final char[] input, final int offset, final int limit) {
+        return trie.longestMatch(input, offset, limit);
+    }
+
+    char convert(final char c) {
+        final char converted = table[c];
+        return converted != 0 ? converted : c;
+    }
+
+    char[] getOutputs() {
+        return outputs;
+    }
+
+    int getOutputStart(final int index) {
+        return outputOffsets[index];
+    }
+
+    int getOutputEnd(final int index) {
+        return outputOffsets[index + 1];
+    }
+
+    public String convert(final String text) {
+        final char[] input = text.toCharArray();
+        final StringBuilder buf = new StringBuilder(input.length);
+        int pos = 0;
+        while (pos < input.length) {
+            final long match = match(input, pos, input.length);
+            if (match != -1) {
+                final int index = (int) match;
+                buf.append(outputs, getOutputStart(index), getOutputEnd(index) - getOutputStart(index));
+                pos += (int) (match >>> 32);
+            } else {
+                buf.append(convert(input[pos]));
+                pos++;
+            }
+        }
+        return buf.toString();
+    }
+
+    public long ramBytesUsed() {
+        return (long) table.length * Character.BYTES + trie.ramBytesUsed() + (long) outputs.length * Character.BYTES
+                + (long) outputOffsets.length * Integer.BYTES;
+    }
+
+    private static class S2THolder {
+        private static final ChineseConverter INSTANCE = new ChineseConverter(Type.S2T);
+    }
+
+    private static class T2SHolder {
+        private static final ChineseConverter INSTANCE = new ChineseConverter(Type.T2S);
+    }
+}
@@ -0,0 +1,140 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.AttributeImpl;
+
+/**
+ * Wraps a tokenizer to feed it the input in windows of at most chunkSize chars.
+ * A window ends at the last sentence or punctuation boundary in it, so the wrapped tokenizer
+ * never buffers more than one window. Offsets are shifted by the start of each window.
+ */
+public class ChunkingTokenizer extends Tokenizer {
+
+    private static final String SENTENCE_BOUNDARIES = "\n\r。．！？!?";
+
+    private static final String CLAUSE_BOUNDARIES = "、，,;；:：）)」』】";
+
+    private final Tokenizer tokenizer;
+
+    private final OffsetAttribute offsetAtt;
+
+    private final char[] buffer;
+
+    // chars in buffer
+    private int length;
+
+    // chars in the current window
+    private int windowLength;
+
+    // offset of the current window in the input
+    private int windowOffset;
+
+    private boolean exhausted;
+
+    private boolean active;
+
+    public ChunkingTokenizer(final Tokenizer tokenizer, final int chunkSize) {
+        this.tokenizer = tokenizer;
+        final Iterator<AttributeImpl> iter = tokenizer.getAttributeImplsIterator();
+        while (iter.hasNext()) {
+            addAttributeImpl(iter.next());
+        }
+        offsetAtt = addAttribute(OffsetAttribute.class);
+        buffer = new char[chunkSize];
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        while (true) {
+            if (!active && !nextWindow()) {
+                return false;
+            }
+            clearAttributes();
+            if (tokenizer.incrementToken()) {
+                offsetAtt.setOffset(correctOffset(windowOffset + offsetAtt.startOffset()),
+                        correctOffset(windowOffset + offsetAtt.endOffset()));
+                return true;
+            }
+            tokenizer.end();
+            tokenizer.close();
+            active = false;
+        }
+    }
+
+    private boolean nextWindow() throws IOException {
+        // keep the rest of the previous window
+        windowOffset += windowLength;
+        length -= windowLength;
+        System.arraycopy(buffer, windowLength, buffer, 0, length);
+        windowLength = 0;
+        while (!exhausted && length < buffer.length) {
+            final int n = input.read(buffer, length, buffer.length - length);
+            if (n == -1) {
+                exhausted = true;
+            } else {
+                length += n;
+            }
+        }
+        if (length == 0) {
+            return false;
+        }
+        windowLength = exhausted ? length : findBoundary();
+        tokenizer.setReader(new CharArrayReader(buffer, 0, windowLength));
+        tokenizer.reset();
+        active = true;
+        return true;
+    }
+
+    private int findBoundary() {
+        // a window shorter than half of the buffer is not worth a boundary
+        final int min = length / 2;
+        for (int i = length - 1; i >= min; i--) {
+            if (SENTENCE_BOUNDARIES.indexOf(buffer[i]) != -1) {
+                return i + 1;
+            }
+        }
+        for (int i = length - 1; i >= min; i--) {
+            if (CLAUSE_BOUNDARIES.indexOf(buffer[i]) != -1 || Character.isWhitespace(buffer[i])) {
+                return i + 1;
+            }
+        }
+        if (Character.isHighSurrogate(buffer[length - 1])) {
+            return length - 1;
+        }
+        return length;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        length = 0;
+        windowLength = 0;
+        windowOffset = 0;
+        exhausted = false;
+        active = false;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalOffset = correctOffset(windowOffset + length);
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (active) {
+                active = false;
+                tokenizer.close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.CharFilter;
+
+/**
+ * Counts the chars read through it. Offsets are passed through unchanged,
+ * so the correction of an underlying CharFilter still applies.
+ */
+public class CountingCharFilter extends CharFilter {
+
+    private long count;
+
+    public CountingCharFilter(final Reader input) {
+        super(input);
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        final int n = input.read(cbuf, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int c = input.read();
+        if (c != -1) {
+            count++;
+        }
+        return c;
+    }
+
+    @Override
+    protected int correct(final int currentOff) {
+        return currentOff;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,44 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.CharFilter;
+
+/**
+ * Creates the char filter on the first char of the input, so that the empty stream an index checks its analyzers with
+ * does not build delegates and dictionaries.
+ */
+public class DeferredCharFilter extends CharFilter {
+
+    private final Function<Reader, Reader> charFilterFactory;
+
+    private Reader charFilter;
+
+    public DeferredCharFilter(final Reader input, final Function<Reader, Reader> charFilterFactory) {
+        super(input);
+        this.charFilterFactory = charFilterFactory;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (charFilter == null) {
+            if (len == 0) {
+                return 0;
+            }
+            final int c = input.read();
+            if (c == -1) {
+                return -1;
+            }
+            charFilter = charFilterFactory.apply(new PrefixedReader(new char[] { (char) c }, 1, input));
+        }
+        return charFilter.read(cbuf, off, len);
+    }
+
+    @Override
+    protected int correct(final int currentOff) {
+        // the created char filter reads the input through the char read ahead, so it corrects up to the input
+        return charFilter instanceof CharFilter ? ((CharFilter) charFilter).correctOffset(currentOff) : currentOff;
+    }
+}
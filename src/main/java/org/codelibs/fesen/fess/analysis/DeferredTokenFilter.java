@@ -0,0 +1,93 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Creates the filter on the first token of the input, so that the empty stream an index checks its analyzers with
+ * does not build delegates and dictionaries. The created filter is kept for the following inputs.
+ * It shares the attributes of this stream, so tokens are not copied.
+ */
+public class DeferredTokenFilter extends TokenFilter {
+
+    private final Function<TokenStream, TokenStream> filterFactory;
+
+    private Source source;
+
+    private TokenStream filter;
+
+    public DeferredTokenFilter(final TokenStream input, final Function<TokenStream, TokenStream> filterFactory) {
+        super(input);
+        this.filterFactory = filterFactory;
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        if (filter == null) {
+            if (!input.incrementToken()) {
+                return false;
+            }
+            source = new Source(input);
+            filter = filterFactory.apply(source);
+            filter.reset();
+            // the token in the attributes is the first one the filter reads
+            source.replay = true;
+        }
+        return filter.incrementToken();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        if (filter != null) {
+            source.replay = false;
+            filter.reset();
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        if (filter != null) {
+            filter.end();
+        } else {
+            super.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (filter != null) {
+            filter.close();
+        } else {
+            super.close();
+        }
+    }
+
+    /**
+     * The input of the created filter, which does not reset the input again.
+     */
+    private static class Source extends TokenFilter {
+        private boolean replay;
+
+        Source(final TokenStream input) {
+            super(input);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (replay) {
+                replay = false;
+                return true;
+            }
+            return input.incrementToken();
+        }
+
+        @Override
+        public void reset() {
+            // reset by the deferred filter
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Creates the tokenizer on the first reset with a non-empty input, so that the empty stream an index checks its analyzers with
+ * does not build delegates and dictionaries. The created tokenizer is kept for the following inputs.
+ * Its attributes are added to this one when it is created, and they are copied to this one per token.
+ */
+public class DeferredTokenizer extends Tokenizer {
+
+    private final Supplier<Tokenizer> supplier;
+
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+
+    private Tokenizer tokenizer;
+
+    // whether the tokenizer reads the input through the char read ahead, so that its offsets are corrected here
+    private boolean prefixed;
+
+    // whether the tokenizer was reset for the input
+    private boolean active;
+
+    public DeferredTokenizer(final Supplier<Tokenizer> supplier) {
+        this.supplier = supplier;
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        if (!active || !tokenizer.incrementToken()) {
+            return false;
+        }
+        clearAttributes();
+        tokenizer.copyTo(this);
+        if (prefixed) {
+            offsetAtt.setOffset(correctOffset(offsetAtt.startOffset()), correctOffset(offsetAtt.endOffset()));
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        if (tokenizer != null) {
+            // the tokenizer reads and corrects offsets through the same reader
+            tokenizer.setReader(input);
+            prefixed = false;
+        } else {
+            final int c = input.read();
+            if (c == -1) {
+                return;
+            }
+            tokenizer = supplier.get();
+            final Iterator<Class<? extends Attribute>> iter = tokenizer.getAttributeClassesIterator();
+            while (iter.hasNext()) {
+                addAttribute(iter.next());
+            }
+            tokenizer.setReader(new PrefixedReader(new char[] { (char) c }, 1, input));
+            prefixed = true;
+        }
+        tokenizer.reset();
+        active = true;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        if (active) {
+            tokenizer.end();
+            tokenizer.copyTo(this);
+            if (prefixed) {
+                offsetAtt.setOffset(correctOffset(offsetAtt.startOffset()), correctOffset(offsetAtt.endOffset()));
+            }
+        } else {
+            final int finalOffset = correctOffset(0);
+            offsetAtt.setOffset(finalOffset, finalOffset);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (active) {
+                active = false;
+                tokenizer.close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.util.Arrays;
+
+/**
+ * A double-array trie over chars that finds the longest key starting at a position without allocation.
+ * Chars are renumbered to dense codes, and a transition from state s by code c goes to
+ * t = base[s] + c if check[t] == s + 1.
+ */
+public class DoubleArrayTrie {
+
+    private static final int NO_VALUE = -1;
+
+    // char to code, 0 for chars in no key
+    private final char[] codeMap = new char[Character.MAX_VALUE + 1];
+
+    private int[] base;
+
+    private int[] check;
+
+    private int[] value;
+
+    private int nextCheckPos;
+
+    /**
+     * Builds a trie of keys sorted in char order, where values[i] is the non-negative value of keys[i].
+     */
+    public DoubleArrayTrie(final char[][] keys, final int[] values) {
+        int alphabetSize = 0;
+        for (final char[] key : keys) {
+            for (final char c : key) {
+                if (codeMap[c] == 0) {
+                    codeMap[c] = (char) ++alphabetSize;
+                }
+            }
+        }
+        final int size = Math.max(keys.length * 2, 1024) + alphabetSize + 1;
+        base = new int[size];
+        check = new int[size];
+        value = new int[size];
+        Arrays.fill(value, NO_VALUE);
+        check[0] = -1;
+        nextCheckPos = 1;
+        if (keys.length > 0) {
+            insert(keys, values, 0, 0, keys.length, 0);
+        }
+        shrink();
+    }
+
+    private void insert(final char[][] keys, final int[] values, final int depth, final int left, final int right, final int state) {
+        int start = left;
+        if (keys[start].length == depth) {
+            // the key ending here sorts before its extensions
+            value[state] = values[start];
+            start++;
+        }
+        if (start == right) {
+            return;
+        }
+
+        int childCount = 0;
+        int prev = -1;
+        for (int i = start; i < right; i++) {
+            final int c = keys[i][depth];
+            if (c != prev) {
+                childCount++;
+                prev = c;
+            }
+        }
+        final int[] codes = new int[childCount];
+        final int[] bounds = new int[childCount + 1];
+        int n = 0;
+        prev = -1;
+        for (int i = start; i < right; i++) {
+            final int c = keys[i][depth];
+            if (c != prev) {
+                codes[n] = codeMap[c];
+                bounds[n] = i;
+                n++;
+                prev = c;
+            }
+        }
+        bounds[childCount] = right;
+
+        final int b = findBase(codes);
+        base[state] = b;
+        for (final int code : codes) {
+            check[b + code] = state + 1;
+        }
+        for (int i = 0; i < childCount; i++) {
+            insert(keys, values, depth + 1, bounds[i], bounds[i + 1], b + codes[i]);
+        }
+    }
+
+    private int findBase(final int[] codes) {
+        int minCode = Integer.MAX_VALUE;
+        int maxCode = 0;
+        for (final int code : codes) {
+            minCode = Math.min(minCode, code);
+            maxCode = Math.max(maxCode, code);
+        }
+        int pos = Math.max(minCode + 1, nextCheckPos) - 1;
+        int occupied = 0;
+        boolean first = true;
+        while (true) {
+            pos++;
+            final int b = pos - minCode;
+            ensureCapacity(b + maxCode + 1);
+            if (check[pos] != 0) {
+                occupied++;
+                continue;
+            }
+            if (first) {
+                nextCheckPos = pos;
+                first = false;
+            }
+            boolean free = true;
+            for (final int code : codes) {
+                if (check[b + code] != 0) {
+                    free = false;
+                    break;
+                }
+            }
+            if (free) {
+                // skip a crowded region in later searches
+                if (occupied >= 0.95 * (pos - nextCheckPos + 1)) {
+                    nextCheckPos = pos;
+                }
+                return b;
+            }
+        }
+    }
+
+    private void ensureCapacity(final int size) {
+        if (size <= check.length) {
+            return;
+        }
+        final int newSize = Math.max(size, check.length + (check.length >> 1));
+        base = Arrays.copyOf(base, newSize);
+        check = Arrays.copyOf(check, newSize);
+        final int oldSize = value.length;
+        value = Arrays.copyOf(value, newSize);
+        Arrays.fill(value, oldSize, newSize, NO_VALUE);
+    }
+
+    private void shrink() {
+        int size = check.length;
+        while (size > 1 && check[size - 1] == 0) {
+            size--;
+        }
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+        value = Arrays.copyOf(value, size);
+    }
+
+    /**
+     * Returns the longest key in buffer[offset, limit) that starts at offset,
+     * packed as (length &lt;&lt; 32 | value), or -1 if no key matches.
+     */
+    public long longestMatch(final char[] buffer, final int offset, final int limit) {
+        long result = -1;
+        int state = 0;
+        for (int i = offset; i < limit; i++) {
+            final int code = codeMap[buffer[i]];
+            if (code == 0) {
+                break;
+            }
+            final int next = base[state] + code;
+            if (next >= check.length || check[next] != state + 1) {
+                break;
+            }
+            state = next;
+            if (value[state] != NO_VALUE) {
+                result = ((long) (i - offset + 1) << 32) | value[state];
+            }
+        }
+        return result;
+    }
+
+    public long ramBytesUsed() {
+        return (long) base.length * Integer.BYTES * 3 + (long) codeMap.length * Character.BYTES;
+    }
+}
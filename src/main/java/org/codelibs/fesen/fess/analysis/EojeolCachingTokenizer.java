@@ -0,0 +1,186 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeSource.State;
+
+/**
+ * Wraps a Korean tokenizer to tokenize each eojeol, a run of chars between whitespace, on its own,
+ * and to replay the tokens of an eojeol found in a {@link TokenCache}. Frequent eojeol, such as nouns with particles,
+ * are decompounded once. The wrapped tokenizer reads an eojeol after a space, so that the space penalty applies
+ * as in the whole text, but a path that depends on the previous eojeol can differ.
+ */
+public final class EojeolCachingTokenizer extends Tokenizer {
+
+    private final Tokenizer tokenizer;
+
+    private final TokenCache cache;
+
+    private final OffsetAttribute offsetAtt;
+
+    private final EojeolReader eojeolReader = new EojeolReader();
+
+    private final List<State> recording = new ArrayList<>();
+
+    private char[] buffer = new char[1024];
+
+    // chars in buffer
+    private int length;
+
+    // end of the current eojeol
+    private int pos;
+
+    // offset of the wrapped tokenizer's input, which starts with a space
+    private int shift;
+
+    private State[] tokens;
+
+    private int tokenIndex;
+
+    public EojeolCachingTokenizer(final Tokenizer tokenizer, final TokenCache cache) {
+        this.tokenizer = tokenizer;
+        this.cache = cache;
+        final Iterator<AttributeImpl> iter = tokenizer.getAttributeImplsIterator();
+        while (iter.hasNext()) {
+            addAttributeImpl(iter.next());
+        }
+        offsetAtt = addAttribute(OffsetAttribute.class);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        clearAttributes();
+        while (tokens == null || tokenIndex >= tokens.length) {
+            if (!nextEojeol()) {
+                return false;
+            }
+        }
+        tokenizer.restoreState(tokens[tokenIndex++]);
+        offsetAtt.setOffset(correctOffset(shift + offsetAtt.startOffset()), correctOffset(shift + offsetAtt.endOffset()));
+        return true;
+    }
+
+    private boolean nextEojeol() throws IOException {
+        while (pos < length && Character.isWhitespace(buffer[pos])) {
+            pos++;
+        }
+        if (pos == length) {
+            return false;
+        }
+        final int start = pos;
+        while (pos < length && !Character.isWhitespace(buffer[pos])) {
+            pos++;
+        }
+        shift = start - 1;
+        tokenIndex = 0;
+
+        final String key = pos - start <= cache.getMaxInputLength() ? new String(buffer, start, pos - start) : null;
+        if (key != null) {
+            final TokenCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                tokens = entry.tokens;
+                return true;
+            }
+        }
+
+        eojeolReader.setEojeol(start, pos);
+        tokenizer.setReader(eojeolReader);
+        try {
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                recording.add(tokenizer.captureState());
+            }
+            tokenizer.end();
+        } finally {
+            tokenizer.close();
+        }
+        tokens = recording.toArray(new State[recording.size()]);
+        recording.clear();
+        if (key != null) {
+            cache.put(key, new TokenCache.Entry(tokens, null));
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = ArrayUtil.grow(buffer, length + 1);
+            }
+            final int n = input.read(buffer, length, buffer.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        pos = 0;
+        tokens = null;
+        tokenIndex = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalOffset = correctOffset(length);
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        tokens = null;
+    }
+
+    /**
+     * Reads a space and an eojeol of the buffer without copying it.
+     */
+    private class EojeolReader extends Reader {
+        private boolean space;
+
+        private int position;
+
+        private int end;
+
+        void setEojeol(final int start, final int end) {
+            space = true;
+            position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            if (!space && position == end) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            if (space) {
+                cbuf[off] = ' ';
+                space = false;
+                n++;
+            }
+            final int count = Math.min(len - n, end - position);
+            System.arraycopy(buffer, position, cbuf, off + n, count);
+            position += count;
+            return n + count;
+        }
+
+        @Override
+        public void close() {
+            // reused for the next eojeol
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.codelibs.fesen.fess.analysis;
+
+import org.apache.lucene.analysis.FilteringTokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Applies the kuromoji base form, part-of-speech stop, reading form and katakana stem filters in one filter.
+ * The kuromoji token is read once per token, and the term of a kept token is rewritten in place while it is accepted,
+ * so the output is the same as the four filters stacked in this order.
+ */
+public final class FusedJapaneseFilter extends FilteringTokenFilter {
+
+    public static final int DEFAULT_MINIMUM_LENGTH = 4;
+
+    private static final char PROLONGED_SOUND_MARK = 'ー';
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+    private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
+
+    private final Object posAtt;
+
+    private final KuromojiTokenAccessor accessor;
+
+    private final PartOfSpeechStopTags.Matcher matcher;
+
+    private final boolean useRomaji;
+
+    private final int minimumLength;
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    private FusedJapaneseFilter(final TokenStream input, final Object posAtt, final KuromojiTokenAccessor accessor,
+            final PartOfSpeechStopTags.Matcher matcher, final boolean useRomaji, final int minimumLength) {
+        super(input);
+        this.posAtt = posAtt;
+        this.accessor = accessor;
+        this.matcher = matcher;
+        this.useRomaji = useRomaji;
+        this.minimumLength = minimumLength;
+    }
+
+    /**
+     * Returns the fused filter, or null if the stream has no kuromoji part-of-speech attribute
+     * or romaji is requested without the kuromoji romanizer.
+     */
+    public static TokenStream create(final TokenStream input, final PartOfSpeechStopTags stopTags, final boolean useRomaji,
+            final int minimumLength) {
+        final Attribute attribute = KuromojiTokenAccessor.getAttribute(input);
+        final KuromojiTokenAccessor accessor = attribute != null ? KuromojiTokenAccessor.of(attribute) : null;
+        if (accessor == null || useRomaji && !accessor.hasRomanizer()) {
+            return null;
+        }
+        return new FusedJapaneseFilter(input, attribute, accessor, stopTags.newMatcher(accessor), useRomaji, minimumLength);
+    }
+
+    @Override
+    protected boolean accept() {
+        final Object token = accessor.getToken(posAtt);
+        if (token != null && matcher.isStopTag(token)) {
+            return false;
+        }
+        final boolean keyword = keywordAtt.isKeyword();
+
+        // base form
+        if (!keyword && token != null) {
+            final String baseForm = accessor.getBaseForm(token);
+            if (baseForm != null) {
+                termAtt.setEmpty().append(baseForm);
+            }
+        }
+
+        // reading form
+        final String reading = token != null ? accessor.getReading(token) : null;
+        if (useRomaji) {
+            if (reading == null) {
+                buffer.setLength(0);
+                accessor.romanize(buffer, termAtt);
+                termAtt.setEmpty().append(buffer);
+            } else {
+                accessor.romanize(termAtt.setEmpty(), reading);
+            }
+        } else if (reading != null) {
+            termAtt.setEmpty().append(reading);
+        }
+
+        // katakana stem
+        if (!keyword) {
+            termAtt.setLength(stem(termAtt.buffer(), termAtt.length()));
+        }
+        return true;
+    }
+
+    private int stem(final char[] term, final int length) {
+        if (length == 0 || length < minimumLength) {
+            return length;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.UnicodeBlock.of(term[i]) != Character.UnicodeBlock.KATAKANA) {
+                return length;
+            }
+        }
+        return term[length - 1] == PROLONGED_SOUND_MARK ? length - 1 : length;
+    }
+}
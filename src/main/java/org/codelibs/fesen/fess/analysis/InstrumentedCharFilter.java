@@ -0,0 +1,55 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.CharFilter;
+
+/**
+ * Records the chars read through a char filter and the time spent reading them.
+ */
+public class InstrumentedCharFilter extends CharFilter {
+
+    private final AnalysisMetrics metrics;
+
+    private boolean completed;
+
+    private long count;
+
+    private long timeInNanos;
+
+    public InstrumentedCharFilter(final Reader input, final AnalysisMetrics metrics) {
+        super(input);
+        this.metrics = metrics;
+        metrics.onCreate();
+        metrics.onStart();
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        final long startTime = System.nanoTime();
+        final int n = input.read(cbuf, off, len);
+        timeInNanos += System.nanoTime() - startTime;
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    protected int correct(final int currentOff) {
+        return currentOff;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!completed) {
+                completed = true;
+                metrics.onComplete(count, 0, timeInNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Records the tokens emitted by a token filter and the time spent in its incrementToken(),
+ * which includes the time of the preceding stages of the chain.
+ */
+public class InstrumentedTokenFilter extends TokenFilter {
+
+    private final AnalysisMetrics metrics;
+
+    private boolean started;
+
+    private long tokens;
+
+    private long timeInNanos;
+
+    public InstrumentedTokenFilter(final TokenStream input, final AnalysisMetrics metrics) {
+        super(input);
+        this.metrics = metrics;
+        metrics.onCreate();
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        final long startTime = System.nanoTime();
+        final boolean result = input.incrementToken();
+        timeInNanos += System.nanoTime() - startTime;
+        if (result) {
+            tokens++;
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        tokens = 0;
+        timeInNanos = 0;
+        started = true;
+        metrics.onStart();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (started) {
+                started = false;
+                metrics.onComplete(0, tokens, timeInNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.AttributeImpl;
+
+/**
+ * Wraps a tokenizer to record its input chars, tokens and time into {@link AnalysisMetrics}.
+ * The attribute instances of the wrapped tokenizer are shared, so tokens are not copied.
+ */
+public class InstrumentedTokenizer extends Tokenizer {
+
+    private final Tokenizer tokenizer;
+
+    private final AnalysisMetrics metrics;
+
+    private final int sharedAttributes;
+
+    private boolean clearAttributes;
+
+    private CountingCharFilter reader;
+
+    private long tokens;
+
+    private long timeInNanos;
+
+    public InstrumentedTokenizer(final Tokenizer tokenizer, final AnalysisMetrics metrics) {
+        this.tokenizer = tokenizer;
+        this.metrics = metrics;
+        final Iterator<AttributeImpl> iter = tokenizer.getAttributeImplsIterator();
+        while (iter.hasNext()) {
+            addAttributeImpl(iter.next());
+        }
+        sharedAttributes = countAttributes();
+        metrics.onCreate();
+    }
+
+    private int countAttributes() {
+        int count = 0;
+        final Iterator<AttributeImpl> iter = getAttributeImplsIterator();
+        while (iter.hasNext()) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        if (clearAttributes) {
+            // attributes added by the following filters are not known to the wrapped tokenizer
+            clearAttributes();
+        }
+        final long startTime = System.nanoTime();
+        final boolean result = tokenizer.incrementToken();
+        timeInNanos += System.nanoTime() - startTime;
+        if (result) {
+            tokens++;
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        clearAttributes = countAttributes() != sharedAttributes;
+        reader = new CountingCharFilter(input);
+        tokens = 0;
+        timeInNanos = 0;
+        metrics.onStart();
+        final long startTime = System.nanoTime();
+        tokenizer.setReader(reader);
+        tokenizer.reset();
+        timeInNanos += System.nanoTime() - startTime;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final long startTime = System.nanoTime();
+        tokenizer.end();
+        timeInNanos += System.nanoTime() - startTime;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            tokenizer.close();
+        } finally {
+            super.close();
+            if (reader != null) {
+                metrics.onComplete(reader.getCount(), tokens, timeInNanos);
+                reader = null;
+            }
+        }
+    }
+}
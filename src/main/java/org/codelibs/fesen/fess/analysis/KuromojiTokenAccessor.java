@@ -0,0 +1,194 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Reads the kuromoji token behind a part-of-speech attribute through method handles,
+ * because kuromoji is loaded by another plugin and its classes are not visible here.
+ */
+class KuromojiTokenAccessor {
+
+    private static final Logger logger = LogManager.getLogger(KuromojiTokenAccessor.class);
+
+    private static final String ATTRIBUTE_NAME = "PartOfSpeechAttribute";
+
+    private static final String ROMANIZER_NAME = ".util.ToStringUtil";
+
+    private static final Map<Class<?>, Optional<KuromojiTokenAccessor>> accessors = new ConcurrentHashMap<>();
+
+    private final MethodHandle tokenGetter;
+
+    private final MethodHandle dictionaryGetter;
+
+    private final MethodHandle wordIdGetter;
+
+    private final MethodHandle leftIdGetter;
+
+    private final MethodHandle partOfSpeechGetter;
+
+    private final MethodHandle baseFormGetter;
+
+    private final MethodHandle readingGetter;
+
+    // null if the romanizer is not found
+    private final MethodHandle romanizer;
+
+    private KuromojiTokenAccessor(final MethodHandle tokenGetter, final MethodHandle dictionaryGetter, final MethodHandle wordIdGetter,
+            final MethodHandle leftIdGetter, final MethodHandle partOfSpeechGetter, final MethodHandle baseFormGetter,
+            final MethodHandle readingGetter, final MethodHandle romanizer) {
+        this.tokenGetter = tokenGetter;
+        this.dictionaryGetter = dictionaryGetter;
+        this.wordIdGetter = wordIdGetter;
+        this.leftIdGetter = leftIdGetter;
+        this.partOfSpeechGetter = partOfSpeechGetter;
+        this.baseFormGetter = baseFormGetter;
+        this.readingGetter = readingGetter;
+        this.romanizer = romanizer;
+    }
+
+    /**
+     * Returns the kuromoji part-of-speech attribute of the stream, or null if it has none.
+     */
+    static Attribute getAttribute(final TokenStream input) {
+        final Iterator<Class<? extends Attribute>> iter = input.getAttributeClassesIterator();
+        while (iter.hasNext()) {
+            final Class<? extends Attribute> attributeClass = iter.next();
+            if (ATTRIBUTE_NAME.equals(attributeClass.getSimpleName())) {
+                return input.getAttribute(attributeClass);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the accessor for the implementation of the attribute, or null if it is not a kuromoji attribute.
+     */
+    static KuromojiTokenAccessor of(final Attribute attribute) {
+        return accessors.computeIfAbsent(attribute.getClass(), KuromojiTokenAccessor::create).orElse(null);
+    }
+
+    private static Optional<KuromojiTokenAccessor> create(final Class<?> attributeImplClass) {
+        return AccessController.doPrivileged((PrivilegedAction<Optional<KuromojiTokenAccessor>>) () -> {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                final Field tokenField = attributeImplClass.getDeclaredField("token");
+                tokenField.setAccessible(true);
+                final Class<?> tokenClass = tokenField.getType();
+                final Field dictionaryField = tokenClass.getDeclaredField("dictionary");
+                dictionaryField.setAccessible(true);
+                final Field wordIdField = tokenClass.getDeclaredField("wordId");
+                wordIdField.setAccessible(true);
+                final MethodType objectGetter = MethodType.methodType(Object.class, Object.class);
+                final MethodType stringGetter = MethodType.methodType(String.class, Object.class);
+                return Optional.of(new KuromojiTokenAccessor(//
+                        lookup.unreflectGetter(tokenField).asType(objectGetter), //
+                        lookup.unreflectGetter(dictionaryField).asType(objectGetter), //
+                        lookup.unreflectGetter(wordIdField).asType(MethodType.methodType(int.class, Object.class)), //
+                        lookup.findVirtual(dictionaryField.getType(), "getLeftId", MethodType.methodType(int.class, int.class))
+                                .asType(MethodType.methodType(int.class, Object.class, int.class)), //
+                        lookup.findVirtual(tokenClass, "getPartOfSpeech", MethodType.methodType(String.class)).asType(stringGetter), //
+                        lookup.findVirtual(tokenClass, "getBaseForm", MethodType.methodType(String.class)).asType(stringGetter), //
+                        lookup.findVirtual(tokenClass, "getReading", MethodType.methodType(String.class)).asType(stringGetter), //
+                        findRomanizer(lookup, tokenClass)));
+            } catch (final Exception e) {
+                logger.debug("{} is not a kuromoji part-of-speech attribute.", attributeImplClass.getName(), e);
+                return Optional.empty();
+            }
+        });
+    }
+
+    private static MethodHandle findRomanizer(final MethodHandles.Lookup lookup, final Class<?> tokenClass) {
+        final String className = tokenClass.getPackage().getName() + ROMANIZER_NAME;
+        try {
+            final Class<?> romanizerClass = Class.forName(className, true, tokenClass.getClassLoader());
+            return lookup.findStatic(romanizerClass, "getRomanization",
+                    MethodType.methodType(void.class, Appendable.class, CharSequence.class));
+        } catch (final Exception e) {
+            logger.debug("{} is not found.", className, e);
+            return null;
+        }
+    }
+
+    Object getToken(final Object attribute) {
+        try {
+            return (Object) tokenGetter.invokeExact(attribute);
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    Object getDictionary(final Object token) {
+        try {
+            return (Object) dictionaryGetter.invokeExact(token);
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    int getLeftId(final Object dictionary, final Object token) {
+        try {
+            return (int) leftIdGetter.invokeExact(dictionary, (int) wordIdGetter.invokeExact(token));
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    String getPartOfSpeech(final Object token) {
+        try {
+            return (String) partOfSpeechGetter.invokeExact(token);
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    String getBaseForm(final Object token) {
+        try {
+            return (String) baseFormGetter.invokeExact(token);
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    String getReading(final Object token) {
+        try {
+            return (String) readingGetter.invokeExact(token);
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    boolean hasRomanizer() {
+        return romanizer != null;
+    }
+
+    void romanize(final Appendable builder, final CharSequence s) {
+        try {
+            romanizer.invokeExact(builder, s);
+        } catch (final Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(final Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,310 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Splits text into runs of one script and tokenizes each run with the tokenizer of its language.
+ * Hangul is Korean, kana and the kanji next to it are Japanese, and other kanji are Chinese unless the text has kana.
+ * Latin with letters only Vietnamese uses is Vietnamese, and the rest goes to the tokenizer for {@link Language#OTHER}.
+ * Whitespace, punctuation and digits stay in the current run, so a Vietnamese or Korean phrase is one run.
+ * Tokenizers are created once per language and reused, and token offsets are shifted to the run.
+ * All attributes of a tokenizer, such as the part of speech of the Japanese one, are copied per token,
+ * and the position increment a tokenizer ends its run with goes to the next token.
+ */
+public final class MultilingualTokenizer extends Tokenizer {
+
+    public enum Language {
+        JAPANESE, KOREAN, CHINESE, VIETNAMESE, OTHER
+    }
+
+    // script classes of a char
+    private static final int COMMON = 0;
+
+    private static final int KANA = 1;
+
+    private static final int HAN = 2;
+
+    private static final int HANGUL = 3;
+
+    private static final int LATIN = 4;
+
+    private static final int OTHER_SCRIPT = 5;
+
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private final Function<Language, Tokenizer> tokenizerFactory;
+
+    private final Map<Language, Engine> engines = new EnumMap<>(Language.class);
+
+    private final RunReader runReader = new RunReader();
+
+    private char[] buffer = new char[1024];
+
+    // chars in buffer
+    private int length;
+
+    // start of the next run
+    private int pos;
+
+    private boolean hasKana;
+
+    private int runStart;
+
+    private Engine current;
+
+    // the final position increment of the previous runs
+    private int pendingPositionIncrement;
+
+    public MultilingualTokenizer(final Function<Language, Tokenizer> tokenizerFactory) {
+        this.tokenizerFactory = tokenizerFactory;
+        // the attributes of every tokenizer, and the others are added with the first tokenizer that has them
+        addAttribute(CharTermAttribute.class);
+        addAttribute(PositionLengthAttribute.class);
+        addAttribute(TypeAttribute.class);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (true) {
+            if (current != null) {
+                if (current.tokenizer.incrementToken()) {
+                    clearAttributes();
+                    current.tokenizer.copyTo(this);
+                    offsetAtt.setOffset(correctOffset(runStart + current.offsetAtt.startOffset()),
+                            correctOffset(runStart + current.offsetAtt.endOffset()));
+                    if (pendingPositionIncrement > 0) {
+                        posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + pendingPositionIncrement);
+                        pendingPositionIncrement = 0;
+                    }
+                    return true;
+                }
+                current.tokenizer.end();
+                pendingPositionIncrement += current.posIncAtt.getPositionIncrement();
+                current.tokenizer.close();
+                current = null;
+            }
+            if (!nextRun()) {
+                return false;
+            }
+        }
+    }
+
+    private boolean nextRun() throws IOException {
+        if (pos == length) {
+            return false;
+        }
+        runStart = pos;
+        int runScript = COMMON;
+        boolean runHasKana = false;
+        boolean vietnamese = false;
+        while (pos < length) {
+            final int c = Character.codePointAt(buffer, pos, length);
+            int script = getScript(c);
+            if (script == KANA) {
+                // kana and kanji are one Japanese run
+                script = HAN;
+                runHasKana = true;
+            }
+            if (script != COMMON) {
+                if (runScript == COMMON) {
+                    runScript = script;
+                } else if (script != runScript) {
+                    break;
+                }
+                if (script == LATIN && !vietnamese) {
+                    vietnamese = isVietnamese(c);
+                }
+            }
+            pos += Character.charCount(c);
+        }
+
+        final Language language;
+        switch (runScript) {
+        case HAN:
+            language = runHasKana || hasKana ? Language.JAPANESE : Language.CHINESE;
+            break;
+        case HANGUL:
+            language = Language.KOREAN;
+            break;
+        case LATIN:
+            language = vietnamese ? Language.VIETNAMESE : Language.OTHER;
+            break;
+        default:
+            language = Language.OTHER;
+            break;
+        }
+        current = engines.computeIfAbsent(language, l -> new Engine(tokenizerFactory.apply(l)));
+        runReader.setRun(runStart, pos);
+        current.tokenizer.setReader(runReader);
+        current.tokenizer.reset();
+        if (!current.registered) {
+            // after reset, as a tokenizer that builds its delegate on reset only has the attributes of the delegate then
+            final Iterator<Class<? extends Attribute>> iter = current.tokenizer.getAttributeClassesIterator();
+            while (iter.hasNext()) {
+                addAttribute(iter.next());
+            }
+            current.registered = true;
+        }
+        return true;
+    }
+
+    private static int getScript(final int c) {
+        if (c == 'ー' || c == 'ｰ') {
+            // prolonged sound marks are common to kana
+            return KANA;
+        }
+        switch (Character.UnicodeScript.of(c)) {
+        case HIRAGANA:
+        case KATAKANA:
+            return KANA;
+        case HAN:
+            return HAN;
+        case HANGUL:
+            return HANGUL;
+        case LATIN:
+            return LATIN;
+        case COMMON:
+        case INHERITED:
+        case UNKNOWN:
+            return COMMON;
+        default:
+            return OTHER_SCRIPT;
+        }
+    }
+
+    /**
+     * Returns true for a Latin letter that Vietnamese uses and other languages written in Latin hardly do.
+     */
+    static boolean isVietnamese(final int c) {
+        if (c >= 0x1EA0 && c <= 0x1EF9) {
+            // vowels with tone marks, such as ạ, ế and ữ
+            return true;
+        }
+        switch (c) {
+        case 'ă':
+        case 'Ă':
+        case 'đ':
+        case 'Đ':
+        case 'ơ':
+        case 'Ơ':
+        case 'ư':
+        case 'Ư':
+        case 'ĩ':
+        case 'Ĩ':
+        case 'ũ':
+        case 'Ũ':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        if (current != null) {
+            current.tokenizer.close();
+            current = null;
+        }
+        length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = ArrayUtil.grow(buffer, length + 1);
+            }
+            final int n = input.read(buffer, length, buffer.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        pendingPositionIncrement = 0;
+        hasKana = false;
+        for (int i = 0; i < length; i++) {
+            if (getScript(buffer[i]) == KANA) {
+                hasKana = true;
+                break;
+            }
+        }
+        pos = 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalOffset = correctOffset(length);
+        offsetAtt.setOffset(finalOffset, finalOffset);
+        posIncAtt.setPositionIncrement(pendingPositionIncrement);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (current != null) {
+            current.tokenizer.close();
+            current = null;
+        }
+    }
+
+    private static class Engine {
+        private final Tokenizer tokenizer;
+
+        private final OffsetAttribute offsetAtt;
+
+        private final PositionIncrementAttribute posIncAtt;
+
+        // whether the attributes of the tokenizer were added to the outer one
+        private boolean registered;
+
+        Engine(final Tokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+            offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+            posIncAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+        }
+    }
+
+    /**
+     * Reads a run of the buffer without copying it.
+     */
+    private class RunReader extends Reader {
+        private int position;
+
+        private int end;
+
+        void setRun(final int start, final int end) {
+            position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            if (position == end) {
+                return -1;
+            }
+            final int n = Math.min(len, end - position);
+            System.arraycopy(buffer, position, cbuf, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // reused for the next run
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.codelibs.fesen.fess.analysis;
+
+import org.apache.lucene.analysis.FilteringTokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+
+/**
+ * Removes tokens whose part of speech is a stop tag, testing the compiled bitset of {@link PartOfSpeechStopTags}
+ * by left id, and comparing strings only for tokens of dictionaries without a part-of-speech table.
+ */
+public final class PartOfSpeechStopFilter extends FilteringTokenFilter {
+
+    private final Object posAtt;
+
+    private final KuromojiTokenAccessor accessor;
+
+    private final PartOfSpeechStopTags.Matcher matcher;
+
+    PartOfSpeechStopFilter(final TokenStream input, final Object posAtt, final KuromojiTokenAccessor accessor,
+            final PartOfSpeechStopTags.Matcher matcher) {
+        super(input);
+        this.posAtt = posAtt;
+        this.accessor = accessor;
+        this.matcher = matcher;
+    }
+
+    @Override
+    protected boolean accept() {
+        final Object token = accessor.getToken(posAtt);
+        // a token without part of speech is kept
+        return token == null || !matcher.isStopTag(token);
+    }
+}
@@ -0,0 +1,123 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Stop tags of a kuromoji part-of-speech filter, compiled per dictionary into a bitset over left ids.
+ * A kuromoji binary dictionary keeps one part of speech per left id, so a token is tested with one bit.
+ * Tokens of a dictionary without such a table, such as a user dictionary, are looked up by string.
+ */
+public class PartOfSpeechStopTags {
+
+    private static final Logger logger = LogManager.getLogger(PartOfSpeechStopTags.class);
+
+    // marks a dictionary without a part-of-speech table
+    private static final long[] NO_BITS = new long[0];
+
+    private final Set<String> stopTags;
+
+    private final Map<Object, long[]> bitSets = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public PartOfSpeechStopTags(final Set<String> stopTags) {
+        this.stopTags = stopTags;
+    }
+
+    /**
+     * Returns a filter removing the tokens with stop tags, or null if the stream has no kuromoji part-of-speech attribute.
+     */
+    public TokenStream create(final TokenStream input) {
+        final Attribute attribute = KuromojiTokenAccessor.getAttribute(input);
+        final KuromojiTokenAccessor accessor = attribute != null ? KuromojiTokenAccessor.of(attribute) : null;
+        return accessor != null ? new PartOfSpeechStopFilter(input, attribute, accessor, newMatcher(accessor)) : null;
+    }
+
+    Matcher newMatcher(final KuromojiTokenAccessor accessor) {
+        return new Matcher(accessor);
+    }
+
+    /**
+     * Returns the stop bits by left id of the dictionary, or null if it has no part-of-speech table.
+     */
+    long[] getBitSet(final Object dictionary) {
+        long[] bits = bitSets.get(dictionary);
+        if (bits == null) {
+            bits = compile(dictionary);
+            bitSets.put(dictionary, bits);
+        }
+        return bits != NO_BITS ? bits : null;
+    }
+
+    private long[] compile(final Object dictionary) {
+        final String[] posDict = AccessController.doPrivileged((PrivilegedAction<String[]>) () -> {
+            for (Class<?> clazz = dictionary.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+                try {
+                    final Field field = clazz.getDeclaredField("posDict");
+                    field.setAccessible(true);
+                    final Object value = field.get(dictionary);
+                    return value instanceof String[] ? (String[]) value : null;
+                } catch (final NoSuchFieldException e) {
+                    // check the superclass
+                } catch (final Exception e) {
+                    logger.debug("Failed to access posDict of {}", dictionary.getClass().getName(), e);
+                    return null;
+                }
+            }
+            return null;
+        });
+        if (posDict == null) {
+            return NO_BITS;
+        }
+        final long[] bits = new long[(posDict.length + 63) >>> 6];
+        for (int leftId = 0; leftId < posDict.length; leftId++) {
+            if (posDict[leftId] != null && stopTags.contains(posDict[leftId])) {
+                bits[leftId >>> 6] |= 1L << leftId;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compiled {} stop tags for {} left ids of {}", stopTags.size(), posDict.length, dictionary.getClass().getName());
+        }
+        return bits;
+    }
+
+    /**
+     * Tests tokens of one stream, keeping the bitset of the dictionary of the last token.
+     */
+    class Matcher {
+        private final KuromojiTokenAccessor accessor;
+
+        private Object dictionary;
+
+        private long[] bits;
+
+        Matcher(final KuromojiTokenAccessor accessor) {
+            this.accessor = accessor;
+        }
+
+        boolean isStopTag(final Object token) {
+            final Object tokenDictionary = accessor.getDictionary(token);
+            if (tokenDictionary != dictionary) {
+                dictionary = tokenDictionary;
+                bits = getBitSet(tokenDictionary);
+            }
+            if (bits != null) {
+                final int leftId = accessor.getLeftId(tokenDictionary, token);
+                if (leftId >>> 6 < bits.length) {
+                    return (bits[leftId >>> 6] & (1L << leftId)) != 0;
+                }
+            }
+            final String partOfSpeech = accessor.getPartOfSpeech(token);
+            return partOfSpeech != null && stopTags.contains(partOfSpeech);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Takes a tokenizer from a {@link TokenizerPool} on reset and gives it back on close,
+ * so that short-lived token streams do not construct a tokenizer each.
+ * The pooled tokenizer has attributes of its own, and they are copied to this one per token.
+ */
+public class PooledTokenizer extends Tokenizer {
+
+    private final TokenizerPool pool;
+
+    private Tokenizer tokenizer;
+
+    public PooledTokenizer(final TokenizerPool pool) {
+        this.pool = pool;
+        // the same attributes from the same factory, so that copyTo finds an implementation for each
+        for (final Class<? extends Attribute> attributeClass : pool.getAttributeClasses()) {
+            addAttribute(attributeClass);
+        }
+    }
+
+    @Override
+    public final boolean incrementToken() throws IOException {
+        if (!tokenizer.incrementToken()) {
+            return false;
+        }
+        clearAttributes();
+        tokenizer.copyTo(this);
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        tokenizer = pool.acquire();
+        // the pooled tokenizer reads and corrects offsets through the same reader
+        tokenizer.setReader(input);
+        tokenizer.reset();
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        tokenizer.end();
+        tokenizer.copyTo(this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (tokenizer != null) {
+                final Tokenizer closing = tokenizer;
+                tokenizer = null;
+                closing.close();
+                pool.release(closing);
+            }
+        } finally {
+            super.close();
+        }
+    }
+}
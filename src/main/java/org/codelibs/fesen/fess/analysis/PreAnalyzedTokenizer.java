@@ -0,0 +1,177 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.InputStreamDataInput;
+
+/**
+ * Replays the tokens encoded by {@link #encode(TokenStream)}, so that a text analyzed once, e.g. in an ingest pipeline,
+ * is indexed without analyzing it again. The input is the Base64 of a version byte followed by, for each token,
+ * the position increment plus one, the position length, the start offset as a zig-zag delta from the previous one,
+ * the offset length and the term, and then a zero and the final offset. The input is decoded while the tokens are read,
+ * so that it is not buffered as a whole.
+ */
+public final class PreAnalyzedTokenizer extends Tokenizer {
+
+    static final byte VERSION = 1;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private final PositionLengthAttribute posLenAtt = addAttribute(PositionLengthAttribute.class);
+
+    private DataInput in;
+
+    private int startOffset;
+
+    private int finalOffset;
+
+    private boolean done;
+
+    /**
+     * Consumes the stream and encodes its terms, positions and offsets in Base64.
+     */
+    public static String encode(final TokenStream stream) throws IOException {
+        final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+        final PositionLengthAttribute posLenAtt = stream.addAttribute(PositionLengthAttribute.class);
+        final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        out.writeByte(VERSION);
+        stream.reset();
+        int lastStartOffset = 0;
+        while (stream.incrementToken()) {
+            out.writeVInt(posIncAtt.getPositionIncrement() + 1);
+            out.writeVInt(posLenAtt.getPositionLength());
+            out.writeZInt(offsetAtt.startOffset() - lastStartOffset);
+            out.writeVInt(offsetAtt.endOffset() - offsetAtt.startOffset());
+            out.writeString(termAtt.toString());
+            lastStartOffset = offsetAtt.startOffset();
+        }
+        stream.end();
+        out.writeVInt(0);
+        out.writeVInt(offsetAtt.endOffset());
+        return Base64.getEncoder().encodeToString(out.toArrayCopy());
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        clearAttributes();
+        if (done) {
+            return false;
+        }
+        try {
+            final int posInc = in.readVInt();
+            if (posInc == 0) {
+                finalOffset = in.readVInt();
+                done = true;
+                return false;
+            }
+            posIncAtt.setPositionIncrement(posInc - 1);
+            posLenAtt.setPositionLength(in.readVInt());
+            startOffset += in.readZInt();
+            final int endOffset = startOffset + in.readVInt();
+            offsetAtt.setOffset(correctOffset(startOffset), correctOffset(endOffset));
+            termAtt.setEmpty().append(in.readString());
+        } catch (final EOFException e) {
+            throw new IllegalArgumentException("The pre-analyzed tokens are truncated.", e);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("The pre-analyzed tokens are not Base64.", e);
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        startOffset = 0;
+        finalOffset = 0;
+        final InputStream stream = Base64.getDecoder().wrap(new AsciiInputStream());
+        final int version;
+        try {
+            version = stream.read();
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("The pre-analyzed tokens are not Base64.", e);
+        }
+        if (version == -1) {
+            // no tokens, e.g. for the empty text analyzed when the index is created
+            in = null;
+            done = true;
+            return;
+        }
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown version of the pre-analyzed tokens.");
+        }
+        in = new InputStreamDataInput(stream);
+        done = false;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int offset = correctOffset(finalOffset);
+        offsetAtt.setOffset(offset, offset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in = null;
+        super.close();
+    }
+
+    /**
+     * Reads the chars of the input as bytes for the Base64 decoder, which rejects the ones outside of its alphabet.
+     */
+    private final class AsciiInputStream extends InputStream {
+
+        private final char[] chars = new char[1024];
+
+        private int offset;
+
+        private int length;
+
+        @Override
+        public int read() throws IOException {
+            if (offset == length) {
+                length = input.read(chars, 0, chars.length);
+                offset = 0;
+                if (length <= 0) {
+                    length = 0;
+                    return -1;
+                }
+            }
+            final char c = chars[offset++];
+            return c < 0x80 ? c : '?';
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int n = 0;
+            while (n < len) {
+                final int c = read();
+                if (c == -1) {
+                    return n == 0 ? -1 : n;
+                }
+                b[off + n++] = (byte) c;
+                if (offset == length) {
+                    break;
+                }
+            }
+            return n;
+        }
+    }
+}
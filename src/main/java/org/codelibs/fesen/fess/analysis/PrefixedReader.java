@@ -0,0 +1,42 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the chars a wrapper read ahead to look at the input, and then the rest of the input.
+ */
+class PrefixedReader extends Reader {
+    private final char[] prefix;
+
+    private final int prefixLength;
+
+    private final Reader reader;
+
+    private int pos;
+
+    PrefixedReader(final char[] prefix, final int prefixLength, final Reader reader) {
+        this.prefix = prefix;
+        this.prefixLength = prefixLength;
+        this.reader = reader;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos < prefixLength) {
+            final int n = Math.min(len, prefixLength - pos);
+            System.arraycopy(prefix, pos, cbuf, off, n);
+            pos += n;
+            return n;
+        }
+        return reader.read(cbuf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the input is closed by the wrapper
+    }
+}
@@ -0,0 +1,63 @@
+package org.codelibs.fesen.fess.analysis;
+
+import org.apache.lucene.util.AttributeSource.State;
+import org.codelibs.fesen.common.cache.Cache;
+import org.codelibs.fesen.common.cache.CacheBuilder;
+
+/**
+ * A bounded LRU cache from short inputs to the token states a tokenizer produced for them.
+ */
+public class TokenCache {
+
+    private final Cache<String, Entry> cache;
+
+    private final int maxInputLength;
+
+    public TokenCache(final int maxEntries, final int maxInputLength) {
+        this.cache = CacheBuilder.<String, Entry> builder().setMaximumWeight(maxEntries).build();
+        this.maxInputLength = maxInputLength;
+    }
+
+    public int getMaxInputLength() {
+        return maxInputLength;
+    }
+
+    Entry get(final String input) {
+        return cache.get(input);
+    }
+
+    void put(final String input, final Entry entry) {
+        cache.put(input, entry);
+    }
+
+    public int getCount() {
+        return cache.count();
+    }
+
+    public long getHits() {
+        return cache.stats().getHits();
+    }
+
+    public long getMisses() {
+        return cache.stats().getMisses();
+    }
+
+    public long getEvictions() {
+        return cache.stats().getEvictions();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    static class Entry {
+        final State[] tokens;
+
+        final State end;
+
+        Entry(final State[] tokens, final State end) {
+            this.tokens = tokens;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.codelibs.fesen.fess.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.Attribute;
+import org.apache.lucene.util.CloseableThreadLocal;
+
+/**
+ * Keeps closed tokenizers per thread so that {@link PooledTokenizer}s reuse them instead of creating new ones.
+ * Each thread keeps at most maxSize tokenizers, and a tokenizer is only taken back by the thread that created it.
+ * A closed pool creates a tokenizer per acquire and keeps none, as a stream may outlive the index that pooled it.
+ */
+public class TokenizerPool {
+
+    private final Supplier<Tokenizer> supplier;
+
+    private final int maxSize;
+
+    // null once closed
+    private volatile CloseableThreadLocal<ArrayDeque<Tokenizer>> pool = new CloseableThreadLocal<ArrayDeque<Tokenizer>>() {
+        @Override
+        protected ArrayDeque<Tokenizer> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private volatile List<Class<? extends Attribute>> attributeClasses;
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder reused = new LongAdder();
+
+    public TokenizerPool(final Supplier<Tokenizer> supplier, final int maxSize) {
+        this.supplier = supplier;
+        this.maxSize = maxSize;
+    }
+
+    Tokenizer acquire() {
+        final CloseableThreadLocal<ArrayDeque<Tokenizer>> current = pool;
+        final Tokenizer tokenizer = current != null ? current.get().pollFirst() : null;
+        if (tokenizer != null) {
+            reused.increment();
+            return tokenizer;
+        }
+        created.increment();
+        return supplier.get();
+    }
+
+    void release(final Tokenizer tokenizer) {
+        final CloseableThreadLocal<ArrayDeque<Tokenizer>> current = pool;
+        if (current == null) {
+            return;
+        }
+        final ArrayDeque<Tokenizer> tokenizers = current.get();
+        if (tokenizers.size() < maxSize) {
+            tokenizers.addFirst(tokenizer);
+        }
+    }
+
+    /**
+     * Returns the attribute classes of the pooled tokenizers, taken from the first one the pool creates.
+     */
+    List<Class<? extends Attribute>> getAttributeClasses() {
+        List<Class<? extends Attribute>> classes = attributeClasses;
+        if (classes == null) {
+            final Tokenizer template = acquire();
+            classes = new ArrayList<>();
+            final Iterator<Class<? extends Attribute>> iter = template.getAttributeClassesIterator();
+            while (iter.hasNext()) {
+                classes.add(iter.next());
+            }
+            release(template);
+            classes = Collections.unmodifiableList(classes);
+            attributeClasses = classes;
+        }
+        return classes;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getReused() {
+        return reused.sum();
+    }
+
+    public void close() {
+        // an acquire or release racing with close may still read the old pool, so it is dropped rather than closed,
+        // and its tokenizers are collected with it
+        pool = null;
+    }
+}
@@ -16,16 +16,21 @@
 
 package org.codelibs.fesen.fess.index.analysis;
 
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-
 import org.apache.lucene.analysis.Tokenizer;
-import org.codelibs.fesen.FesenException;
+import org.apache.lucene.analysis.cn.smart.HMMChineseTokenizer;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.ChunkingTokenizer;
+import org.codelibs.fesen.fess.analysis.DeferredTokenizer;
 import org.codelibs.fesen.fess.analysis.EmptyTokenizer;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenizer;
+import org.codelibs.fesen.fess.analysis.PooledTokenizer;
+import org.codelibs.fesen.fess.analysis.TokenizerPool;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractTokenizerFactory;
 import org.codelibs.fesen.index.analysis.TokenizerFactory;
@@ -35,37 +40,76 @@ public class ChineseTokenizerFactory extends AbstractTokenizerFactory {
     // TODO Fesen support
     private static final String FACTORY = "org.elasticsearch.index.analysis.SmartChineseTokenizerTokenizerFactory";
 
-    private TokenizerFactory tokenizerFactory = null;
+    private static final String ENGINE_BUILTIN = "builtin";
+
+    private static final String ENGINE_EXTERNAL = "external";
+
+    private LazyInstance<TokenizerFactory> tokenizerFactory = null;
+
+    private final boolean builtin;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
+
+    private final int chunkSize;
+
+    private final TokenizerPool tokenizerPool;
 
     public ChineseTokenizerFactory(final IndexSettings indexSettings, final Environment env, final String name, final Settings settings,
             final FessAnalysisService fessAnalysisService) {
         super(indexSettings, settings, name);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKENIZER, name, settings);
+        chunkSize = fessAnalysisService.getChunkSize(name, settings);
+        tokenizerPool = fessAnalysisService.getTokenizerPool(indexSettings, name, settings, this::createTokenizer);
 
-        final Class<?> tokenizerFactoryClass = fessAnalysisService.loadClass(FACTORY);
-        if (tokenizerFactoryClass != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("{} is found.", FACTORY);
-            }
-            tokenizerFactory = AccessController.doPrivileged((PrivilegedAction<TokenizerFactory>) () -> {
-                try {
-                    final Constructor<?> constructor =
-                            tokenizerFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                    return (TokenizerFactory) constructor.newInstance(indexSettings, env, name, settings);
-                } catch (final Exception e) {
-                    throw new FesenException("Failed to load " + FACTORY, e);
+        final String engine = settings.get("engine", ENGINE_BUILTIN);
+        if (ENGINE_BUILTIN.equals(engine)) {
+            builtin = true;
+        } else if (ENGINE_EXTERNAL.equals(engine)) {
+            builtin = false;
+            final DelegateProvider<TokenizerFactory> provider = fessAnalysisService.loadProvider(FACTORY, TokenizerFactory.class);
+            if (provider != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{} is found.", FACTORY);
                 }
-            });
-        } else if (logger.isDebugEnabled()) {
-            logger.debug("{} is not found.", FACTORY);
+                tokenizerFactory = fessAnalysisService.createLazyInstance(settings,
+                        () -> fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings));
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("{} is not found.", FACTORY);
+            }
+
+            if (tokenizerFactory == null) {
+                fessAnalysisService.onDelegateNotFound(ComponentType.TOKENIZER, indexSettings, name, settings, FACTORY);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown engine [" + engine + "] for [" + name + "], expected [" + ENGINE_BUILTIN + "] or ["
+                    + ENGINE_EXTERNAL + "].");
         }
     }
 
     @Override
     public Tokenizer create() {
-        if (tokenizerFactory != null) {
-            return tokenizerFactory.create();
+        if (builtin || tokenizerFactory != null) {
+            // the delegate is built on the first non-empty input, not for the empty stream an index checks its analyzers with
+            return builtin || tokenizerFactory.isBuilt() ? createStream() : new DeferredTokenizer(this::createStream);
         }
+        fessAnalysisService.onFallback(ComponentType.TOKENIZER);
         return new EmptyTokenizer();
     }
 
-}
+    private Tokenizer createStream() {
+        Tokenizer tokenizer = tokenizerPool != null ? new PooledTokenizer(tokenizerPool) : createTokenizer();
+        if (chunkSize > 0) {
+            tokenizer = new ChunkingTokenizer(tokenizer, chunkSize);
+        }
+        return analysisMetrics != null ? new InstrumentedTokenizer(tokenizer, analysisMetrics) : tokenizer;
+    }
+
+    private Tokenizer createTokenizer() {
+        // the HMM dictionaries are loaded once per JVM, and a tokenizer keeps its sentence buffer while it is reused
+        return builtin ? new HMMChineseTokenizer() : tokenizerFactory.get().create();
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2009-2016 the CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package org.codelibs.fesen.fess.index.analysis;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.FusedJapaneseFilter;
+import org.codelibs.fesen.fess.analysis.PartOfSpeechStopTags;
+import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AbstractIndexAnalyzerProvider;
+
+/**
+ * Provides fess_japanese_tokenizer followed by fess_japanese_baseform, fess_japanese_part_of_speech,
+ * fess_japanese_readingform and fess_japanese_stemmer as one analyzer, applying the four filters in a {@link FusedJapaneseFilter}.
+ * The filters are stacked as usual if the tokenizer is not kuromoji or the stop tags are not compiled.
+ */
+public class JapaneseAnalyzerProvider extends AbstractIndexAnalyzerProvider<Analyzer> {
+
+    private final Analyzer analyzer;
+
+    public JapaneseAnalyzerProvider(final IndexSettings indexSettings, final Environment env, final String name, final Settings settings,
+            final FessAnalysisService fessAnalysisService) {
+        super(indexSettings, name, settings);
+        final JapaneseTokenizerFactory tokenizerFactory =
+                new JapaneseTokenizerFactory(indexSettings, env, name, settings, fessAnalysisService);
+        final JapaneseBaseFormFilterFactory baseFormFilterFactory =
+                new JapaneseBaseFormFilterFactory(indexSettings, env, name, settings, fessAnalysisService);
+        final JapanesePartOfSpeechFilterFactory partOfSpeechFilterFactory =
+                new JapanesePartOfSpeechFilterFactory(indexSettings, env, name, settings, fessAnalysisService);
+        final JapaneseReadingFormFilterFactory readingFormFilterFactory =
+                new JapaneseReadingFormFilterFactory(indexSettings, env, name, settings, fessAnalysisService);
+        final JapaneseKatakanaStemmerFactory katakanaStemmerFactory =
+                new JapaneseKatakanaStemmerFactory(indexSettings, env, name, settings, fessAnalysisService);
+        // the same settings as the delegate filters
+        final boolean useRomaji = settings.getAsBoolean("use_romaji", false);
+        final int minimumLength = settings.getAsInt("minimum_length", FusedJapaneseFilter.DEFAULT_MINIMUM_LENGTH);
+        final boolean fused = settings.getAsBoolean("fused", true);
+
+        analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(final String fieldName) {
+                final Tokenizer tokenizer = tokenizerFactory.create();
+                final PartOfSpeechStopTags stopTags = partOfSpeechFilterFactory.getStopTags();
+                TokenStream stream =
+                        fused && stopTags != null ? FusedJapaneseFilter.create(tokenizer, stopTags, useRomaji, minimumLength) : null;
+                if (stream == null) {
+                    stream = baseFormFilterFactory.create(tokenizer);
+                    stream = partOfSpeechFilterFactory.create(stream);
+                    stream = readingFormFilterFactory.create(stream);
+                    stream = katakanaStemmerFactory.create(stream);
+                }
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        };
+    }
+
+    @Override
+    public Analyzer get() {
+        return analyzer;
+    }
+
+}
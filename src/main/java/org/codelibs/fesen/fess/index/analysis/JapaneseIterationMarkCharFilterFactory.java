@@ -17,14 +17,16 @@
 package org.codelibs.fesen.fess.index.analysis;
 
 import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 
-import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.DeferredCharFilter;
+import org.codelibs.fesen.fess.analysis.InstrumentedCharFilter;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractCharFilterFactory;
 import org.codelibs.fesen.index.analysis.CharFilterFactory;
@@ -34,40 +36,47 @@ public class JapaneseIterationMarkCharFilterFactory extends AbstractCharFilterFa
     private static final String[] FACTORIES = { //
             "org.codelibs.fesen.extension.kuromoji.index.analysis.KuromojiIterationMarkCharFilterFactory" };
 
-    private CharFilterFactory charFilterFactory = null;
+    private LazyInstance<CharFilterFactory> charFilterFactory = null;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
 
     public JapaneseIterationMarkCharFilterFactory(final IndexSettings indexSettings, final Environment env, final String name,
             final Settings settings, final FessAnalysisService fessAnalysisService) {
         super(indexSettings, name);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.CHAR_FILTER, name, settings);
 
         for (final String factoryClass : FACTORIES) {
-            final Class<?> charFilterFactoryClass = fessAnalysisService.loadClass(factoryClass);
-            if (charFilterFactoryClass != null) {
+            final DelegateProvider<CharFilterFactory> provider = fessAnalysisService.loadProvider(factoryClass, CharFilterFactory.class);
+            if (provider != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} is found.", factoryClass);
                 }
-                charFilterFactory = AccessController.doPrivileged((PrivilegedAction<CharFilterFactory>) () -> {
-                    try {
-                        final Constructor<?> constructor =
-                                charFilterFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                        return (CharFilterFactory) constructor.newInstance(indexSettings, env, name, settings);
-                    } catch (final Exception e) {
-                        throw new FesenException("Failed to load " + factoryClass, e);
-                    }
-                });
+                charFilterFactory = fessAnalysisService.createLazyInstance(settings,
+                        () -> fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings));
                 break;
             }
             if (logger.isDebugEnabled()) {
                 logger.debug("{} is not found.", factoryClass);
             }
         }
+
+        if (charFilterFactory == null) {
+            fessAnalysisService.onDelegateNotFound(ComponentType.CHAR_FILTER, indexSettings, name, settings, FACTORIES);
+        }
     }
 
     @Override
     public Reader create(final Reader reader) {
         if (charFilterFactory != null) {
-            return charFilterFactory.create(reader);
+            // the delegate is built on the first char, not for the empty stream an index checks its analyzers with
+            final Reader charFilter = charFilterFactory.isBuilt() ? charFilterFactory.get().create(reader)
+                    : new DeferredCharFilter(reader, input -> charFilterFactory.get().create(input));
+            return analysisMetrics != null ? new InstrumentedCharFilter(charFilter, analysisMetrics) : charFilter;
         }
+        fessAnalysisService.onFallback(ComponentType.CHAR_FILTER);
         return reader;
     }
 }
\ No newline at end of file
@@ -16,15 +16,16 @@
 
 package org.codelibs.fesen.fess.index.analysis;
 
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-
 import org.apache.lucene.analysis.TokenStream;
-import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.DeferredTokenFilter;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenFilter;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractTokenFilterFactory;
 import org.codelibs.fesen.index.analysis.TokenFilterFactory;
@@ -34,41 +35,47 @@ public class JapaneseKatakanaStemmerFactory extends AbstractTokenFilterFactory {
     private static final String[] FACTORIES = { //
             "org.codelibs.fesen.extension.kuromoji.index.analysis.KuromojiKatakanaStemmerFactory" };
 
-    private TokenFilterFactory tokenFilterFactory;
+    private LazyInstance<TokenFilterFactory> tokenFilterFactory;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
 
     public JapaneseKatakanaStemmerFactory(final IndexSettings indexSettings, final Environment env, final String name,
             final Settings settings, final FessAnalysisService fessAnalysisService) {
         super(indexSettings, name, settings);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKEN_FILTER, name, settings);
 
         for (final String factoryClass : FACTORIES) {
-            final Class<?> tokenizerFactoryClass = fessAnalysisService.loadClass(factoryClass);
-            if (tokenizerFactoryClass != null) {
+            final DelegateProvider<TokenFilterFactory> provider = fessAnalysisService.loadProvider(factoryClass, TokenFilterFactory.class);
+            if (provider != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} is found.", factoryClass);
                 }
-                tokenFilterFactory = AccessController.doPrivileged((PrivilegedAction<TokenFilterFactory>) () -> {
-                    try {
-                        final Constructor<?> constructor =
-                                tokenizerFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                        return (TokenFilterFactory) constructor.newInstance(indexSettings, env, name, settings);
-                    } catch (final Exception e) {
-                        throw new FesenException("Failed to load " + factoryClass, e);
-                    }
-
-                });
+                tokenFilterFactory = fessAnalysisService.createLazyInstance(settings,
+                        () -> fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings));
                 break;
             }
             if (logger.isDebugEnabled()) {
                 logger.debug("{} is not found.", factoryClass);
             }
         }
+
+        if (tokenFilterFactory == null) {
+            fessAnalysisService.onDelegateNotFound(ComponentType.TOKEN_FILTER, indexSettings, name, settings, FACTORIES);
+        }
     }
 
     @Override
     public TokenStream create(final TokenStream tokenStream) {
         if (tokenFilterFactory != null) {
-            return tokenFilterFactory.create(tokenStream);
+            // the delegate is built on the first token, not for the empty stream an index checks its analyzers with
+            final TokenStream stream = tokenFilterFactory.isBuilt() ? tokenFilterFactory.get().create(tokenStream)
+                    : new DeferredTokenFilter(tokenStream, input -> tokenFilterFactory.get().create(input));
+            return analysisMetrics != null ? new InstrumentedTokenFilter(stream, analysisMetrics) : stream;
         }
+        fessAnalysisService.onFallback(ComponentType.TOKEN_FILTER);
         return tokenStream;
     }
 
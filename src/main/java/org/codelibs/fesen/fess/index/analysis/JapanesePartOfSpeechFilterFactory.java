@@ -16,15 +16,22 @@
 
 package org.codelibs.fesen.fess.index.analysis;
 
-import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Set;
 
 import org.apache.lucene.analysis.TokenStream;
-import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.DeferredTokenFilter;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenFilter;
+import org.codelibs.fesen.fess.analysis.PartOfSpeechStopTags;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractTokenFilterFactory;
 import org.codelibs.fesen.index.analysis.TokenFilterFactory;
@@ -34,26 +41,37 @@ public class JapanesePartOfSpeechFilterFactory extends AbstractTokenFilterFactor
     private static final String[] FACTORIES = { //
             "org.codelibs.fesen.extension.kuromoji.index.analysis.KuromojiPartOfSpeechFilterFactory" };
 
-    private TokenFilterFactory tokenFilterFactory = null;
+    private LazyInstance<TokenFilterFactory> tokenFilterFactory = null;
+
+    // set with the delegate, before it is published
+    private volatile PartOfSpeechStopTags stopTags = null;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
 
     public JapanesePartOfSpeechFilterFactory(final IndexSettings indexSettings, final Environment env, final String name,
             final Settings settings, final FessAnalysisService fessAnalysisService) {
         super(indexSettings, name, settings);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKEN_FILTER, name, settings);
 
         for (final String factoryClass : FACTORIES) {
-            final Class<?> TokenFilterFactoryClass = fessAnalysisService.loadClass(factoryClass);
-            if (TokenFilterFactoryClass != null) {
+            final DelegateProvider<TokenFilterFactory> provider = fessAnalysisService.loadProvider(factoryClass, TokenFilterFactory.class);
+            if (provider != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} is found.", factoryClass);
                 }
-                tokenFilterFactory = AccessController.doPrivileged((PrivilegedAction<TokenFilterFactory>) () -> {
-                    try {
-                        final Constructor<?> constructor = TokenFilterFactoryClass.getConstructor(IndexSettings.class, Environment.class,
-                                String.class, Settings.class);
-                        return (TokenFilterFactory) constructor.newInstance(indexSettings, env, name, settings);
-                    } catch (final Exception e) {
-                        throw new FesenException("Failed to load " + factoryClass, e);
+                tokenFilterFactory = fessAnalysisService.createLazyInstance(settings, () -> {
+                    final TokenFilterFactory factory =
+                            fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings);
+                    if (settings.getAsBoolean("compile_stop_tags", true)) {
+                        final Set<String> tags = getStopTags(factory);
+                        if (tags != null) {
+                            stopTags = new PartOfSpeechStopTags(tags);
+                        }
                     }
+                    return factory;
                 });
                 break;
             }
@@ -61,13 +79,55 @@ public class JapanesePartOfSpeechFilterFactory extends AbstractTokenFilterFactor
                 logger.debug("{} is not found.", factoryClass);
             }
         }
+
+        if (tokenFilterFactory == null) {
+            fessAnalysisService.onDelegateNotFound(ComponentType.TOKEN_FILTER, indexSettings, name, settings, FACTORIES);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> getStopTags(final TokenFilterFactory factory) {
+        return AccessController.doPrivileged((PrivilegedAction<Set<String>>) () -> {
+            try {
+                final Field field = factory.getClass().getDeclaredField("stopTags");
+                field.setAccessible(true);
+                final Object value = field.get(factory);
+                return value instanceof Set ? (Set<String>) value : null;
+            } catch (final Exception e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to access stop tags of {}", factory.getClass().getName(), e);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the compiled stop tags of the delegate, or null if they are not compiled.
+     */
+    public PartOfSpeechStopTags getStopTags() {
+        if (tokenFilterFactory == null) {
+            return null;
+        }
+        tokenFilterFactory.get();
+        return stopTags;
     }
 
     @Override
     public TokenStream create(final TokenStream tokenStream) {
         if (tokenFilterFactory != null) {
-            return tokenFilterFactory.create(tokenStream);
+            // the delegate is built on the first token, not for the empty stream an index checks its analyzers with
+            final TokenStream stream =
+                    tokenFilterFactory.isBuilt() ? createFilter(tokenStream) : new DeferredTokenFilter(tokenStream, this::createFilter);
+            return analysisMetrics != null ? new InstrumentedTokenFilter(stream, analysisMetrics) : stream;
         }
+        fessAnalysisService.onFallback(ComponentType.TOKEN_FILTER);
         return tokenStream;
     }
+
+    private TokenStream createFilter(final TokenStream tokenStream) {
+        final TokenFilterFactory factory = tokenFilterFactory.get();
+        final TokenStream filter = stopTags != null ? stopTags.create(tokenStream) : null;
+        return filter != null ? filter : factory.create(tokenStream);
+    }
 }
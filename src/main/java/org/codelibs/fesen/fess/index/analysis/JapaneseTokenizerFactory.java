@@ -16,16 +16,22 @@
 
 package org.codelibs.fesen.fess.index.analysis;
 
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-
 import org.apache.lucene.analysis.Tokenizer;
-import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.CachingTokenizer;
+import org.codelibs.fesen.fess.analysis.ChunkingTokenizer;
+import org.codelibs.fesen.fess.analysis.DeferredTokenizer;
 import org.codelibs.fesen.fess.analysis.EmptyTokenizer;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenizer;
+import org.codelibs.fesen.fess.analysis.PooledTokenizer;
+import org.codelibs.fesen.fess.analysis.TokenCache;
+import org.codelibs.fesen.fess.analysis.TokenizerPool;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractTokenizerFactory;
 import org.codelibs.fesen.index.analysis.TokenizerFactory;
@@ -35,26 +41,38 @@ public class JapaneseTokenizerFactory extends AbstractTokenizerFactory {
     private static final String[] FACTORIES = { //
             "org.codelibs.fesen.extension.analysis.ReloadableKuromojiTokenizerFactory" };
 
-    private TokenizerFactory tokenizerFactory = null;
+    private LazyInstance<TokenizerFactory> tokenizerFactory = null;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
+
+    private final int chunkSize;
+
+    private final TokenizerPool tokenizerPool;
+
+    private final TokenCache tokenCache;
 
     public JapaneseTokenizerFactory(final IndexSettings indexSettings, final Environment env, final String name, final Settings settings,
             final FessAnalysisService fessAnalysisService) {
         super(indexSettings, settings, name);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKENIZER, name, settings);
+        chunkSize = fessAnalysisService.getChunkSize(name, settings);
+        tokenizerPool = fessAnalysisService.getTokenizerPool(indexSettings, name, settings, this::createTokenizer);
+        tokenCache = fessAnalysisService.getTokenCache(indexSettings, name, settings);
 
         for (final String factoryClass : FACTORIES) {
-            final Class<?> tokenizerFactoryClass = fessAnalysisService.loadClass(factoryClass);
-            if (tokenizerFactoryClass != null) {
+            final DelegateProvider<TokenizerFactory> provider = fessAnalysisService.loadProvider(factoryClass, TokenizerFactory.class);
+            if (provider != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} is found.", factoryClass);
                 }
-                tokenizerFactory = AccessController.doPrivileged((PrivilegedAction<TokenizerFactory>) () -> {
-                    try {
-                        final Constructor<?> constructor =
-                                tokenizerFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                        return (TokenizerFactory) constructor.newInstance(indexSettings, env, name, settings);
-                    } catch (final Exception e) {
-                        throw new FesenException("Failed to load " + factoryClass, e);
-                    }
+                tokenizerFactory = fessAnalysisService.createLazyInstance(settings, () -> {
+                    final String userDictionary = settings.get("user_dictionary");
+                    final String digest = userDictionary != null
+                            ? fessAnalysisService.getUserDictionaryDigest(env.configFile().resolve(userDictionary)) : null;
+                    return fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings, digest);
                 });
                 break;
             }
@@ -62,14 +80,35 @@ public class JapaneseTokenizerFactory extends AbstractTokenizerFactory {
                 logger.debug("{} is not found.", factoryClass);
             }
         }
+
+        if (tokenizerFactory == null) {
+            fessAnalysisService.onDelegateNotFound(ComponentType.TOKENIZER, indexSettings, name, settings, FACTORIES);
+        }
     }
 
     @Override
     public Tokenizer create() {
         if (tokenizerFactory != null) {
-            return tokenizerFactory.create();
+            // the delegate is built on the first non-empty input, not for the empty stream an index checks its analyzers with
+            return tokenizerFactory.isBuilt() ? createStream() : new DeferredTokenizer(this::createStream);
         }
+        fessAnalysisService.onFallback(ComponentType.TOKENIZER);
         return new EmptyTokenizer();
     }
 
-}
+    private Tokenizer createStream() {
+        Tokenizer tokenizer = tokenizerPool != null ? new PooledTokenizer(tokenizerPool) : createTokenizer();
+        if (chunkSize > 0) {
+            tokenizer = new ChunkingTokenizer(tokenizer, chunkSize);
+        }
+        if (tokenCache != null) {
+            tokenizer = new CachingTokenizer(tokenizer, tokenCache);
+        }
+        return analysisMetrics != null ? new InstrumentedTokenizer(tokenizer, analysisMetrics) : tokenizer;
+    }
+
+    private Tokenizer createTokenizer() {
+        return tokenizerFactory.get().create();
+    }
+
+}
\ No newline at end of file
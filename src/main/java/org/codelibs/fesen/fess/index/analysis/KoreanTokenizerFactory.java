@@ -16,16 +16,35 @@
 
 package org.codelibs.fesen.fess.index.analysis;
 
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
 
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+import org.apache.lucene.analysis.ko.dict.UserDictionary;
 import org.codelibs.fesen.FesenException;
+import org.codelibs.fesen.common.hash.MessageDigests;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.CachingTokenizer;
+import org.codelibs.fesen.fess.analysis.ChunkingTokenizer;
+import org.codelibs.fesen.fess.analysis.DeferredTokenizer;
 import org.codelibs.fesen.fess.analysis.EmptyTokenizer;
+import org.codelibs.fesen.fess.analysis.EojeolCachingTokenizer;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenizer;
+import org.codelibs.fesen.fess.analysis.PooledTokenizer;
+import org.codelibs.fesen.fess.analysis.TokenCache;
+import org.codelibs.fesen.fess.analysis.TokenizerPool;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractTokenizerFactory;
 import org.codelibs.fesen.index.analysis.TokenizerFactory;
@@ -35,37 +54,163 @@ public class KoreanTokenizerFactory extends AbstractTokenizerFactory {
     // TODO Fesen support
     private static final String FACTORY = "org.elasticsearch.index.analysis.NoriTokenizerFactory";
 
-    private TokenizerFactory tokenizerFactory = null;
+    private static final String ENGINE_BUILTIN = "builtin";
+
+    private static final String ENGINE_EXTERNAL = "external";
+
+    private static final int DEFAULT_EOJEOL_CACHE_MAX_LENGTH = 16;
+
+    private LazyInstance<TokenizerFactory> tokenizerFactory = null;
+
+    // set with the delegate, before it is published
+    private volatile TokenCache eojeolCache = null;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
+
+    private final int chunkSize;
+
+    private final TokenizerPool tokenizerPool;
+
+    private final TokenCache tokenCache;
 
     public KoreanTokenizerFactory(final IndexSettings indexSettings, final Environment env, final String name, final Settings settings,
             final FessAnalysisService fessAnalysisService) {
         super(indexSettings, settings, name);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKENIZER, name, settings);
+        // the eojeol cache reads the whole input
+        chunkSize = settings.getAsInt("eojeol_cache_size", 0) > 0 ? fessAnalysisService.getBoundedChunkSize(name, settings)
+                : fessAnalysisService.getChunkSize(name, settings);
+        tokenizerPool = fessAnalysisService.getTokenizerPool(indexSettings, name, settings, this::createTokenizer);
+        tokenCache = fessAnalysisService.getTokenCache(indexSettings, name, settings);
 
-        final Class<?> tokenizerFactoryClass = fessAnalysisService.loadClass(FACTORY);
-        if (tokenizerFactoryClass != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("{} is found.", FACTORY);
-            }
-            tokenizerFactory = AccessController.doPrivileged((PrivilegedAction<TokenizerFactory>) () -> {
-                try {
-                    final Constructor<?> constructor =
-                            tokenizerFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                    return (TokenizerFactory) constructor.newInstance(indexSettings, env, name, settings);
-                } catch (final Exception e) {
-                    throw new FesenException("Failed to load " + FACTORY, e);
-                }
+        final String engine = settings.get("engine", ENGINE_BUILTIN);
+        if (ENGINE_BUILTIN.equals(engine)) {
+            final KoreanTokenizer.DecompoundMode decompoundMode = getDecompoundMode(name, settings);
+            final boolean outputUnknownUnigrams = settings.getAsBoolean("output_unknown_unigrams", false);
+            final boolean discardPunctuation = settings.getAsBoolean("discard_punctuation", true);
+            tokenizerFactory = fessAnalysisService.createLazyInstance(settings, () -> {
+                final String digest = getUserDictionaryDigest(env, settings);
+                eojeolCache = getEojeolCache(indexSettings, settings, digest);
+                final UserDictionary userDictionary = loadUserDictionary(indexSettings, env, settings, digest);
+                return TokenizerFactory.newFactory(name, () -> new KoreanTokenizer(TokenStream.DEFAULT_TOKEN_ATTRIBUTE_FACTORY,
+                        userDictionary, decompoundMode, outputUnknownUnigrams, discardPunctuation));
             });
-        } else if (logger.isDebugEnabled()) {
-            logger.debug("{} is not found.", FACTORY);
+        } else if (ENGINE_EXTERNAL.equals(engine)) {
+            final DelegateProvider<TokenizerFactory> provider = fessAnalysisService.loadProvider(FACTORY, TokenizerFactory.class);
+            if (provider != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{} is found.", FACTORY);
+                }
+                tokenizerFactory = fessAnalysisService.createLazyInstance(settings, () -> {
+                    final String digest = getUserDictionaryDigest(env, settings);
+                    eojeolCache = getEojeolCache(indexSettings, settings, digest);
+                    return fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings, digest);
+                });
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("{} is not found.", FACTORY);
+            }
+
+            if (tokenizerFactory == null) {
+                fessAnalysisService.onDelegateNotFound(ComponentType.TOKENIZER, indexSettings, name, settings, FACTORY);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown engine [" + engine + "] for [" + name + "], expected [" + ENGINE_BUILTIN + "] or ["
+                    + ENGINE_EXTERNAL + "].");
         }
     }
 
+    private static KoreanTokenizer.DecompoundMode getDecompoundMode(final String name, final Settings settings) {
+        final String value = settings.get("decompound_mode", KoreanTokenizer.DEFAULT_DECOMPOUND.name());
+        try {
+            return KoreanTokenizer.DecompoundMode.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown decompound_mode [" + value + "] for [" + name + "].", e);
+        }
+    }
+
+    /**
+     * Returns the checksum of the user dictionary, an empty string without one, or null if it is unknown.
+     */
+    private String getUserDictionaryDigest(final Environment env, final Settings settings) {
+        final String userDictionary = settings.get("user_dictionary");
+        if (userDictionary != null) {
+            return fessAnalysisService.getUserDictionaryDigest(env.configFile().resolve(userDictionary));
+        }
+        final List<String> rules = settings.getAsList("user_dictionary_rules");
+        if (rules.isEmpty()) {
+            return "";
+        }
+        return MessageDigests.toHexString(MessageDigests.sha256().digest(String.join("\n", rules).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the user dictionary, which indices with the same dictionary share, or null.
+     */
+    private UserDictionary loadUserDictionary(final IndexSettings indexSettings, final Environment env, final Settings settings,
+            final String digest) {
+        final List<String> rules = fessAnalysisService.getUserDictionaryRules(env, settings);
+        if (rules.isEmpty()) {
+            return null;
+        }
+        final Supplier<UserDictionary> loader = () -> {
+            try {
+                return UserDictionary.open(new StringReader(String.join("\n", rules)));
+            } catch (final IOException e) {
+                throw new FesenException("Failed to load the user dictionary of [" + name() + "].", e);
+            }
+        };
+        return digest != null ? fessAnalysisService.getSharedInstance("ko_user_dictionary#" + digest, indexSettings, UserDictionary.class,
+                loader) : loader.get();
+    }
+
+    /**
+     * Returns the eojeol cache if the tokenizer sets eojeol_cache_size, which indices with the same settings
+     * and user dictionary share, or null.
+     */
+    private TokenCache getEojeolCache(final IndexSettings indexSettings, final Settings settings, final String digest) {
+        final int size = settings.getAsInt("eojeol_cache_size", 0);
+        if (size <= 0) {
+            return null;
+        }
+        final int maxLength = settings.getAsInt("eojeol_cache_max_length", DEFAULT_EOJEOL_CACHE_MAX_LENGTH);
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("[eojeol_cache_max_length] must be positive: " + maxLength);
+        }
+        final Supplier<TokenCache> supplier = () -> new TokenCache(size, maxLength);
+        if (digest == null) {
+            return supplier.get();
+        }
+        final String key = "eojeol_cache@" + indexSettings.getIndexVersionCreated().id + settings.toString() + "#" + digest;
+        return fessAnalysisService.getSharedInstance(key, indexSettings, TokenCache.class, supplier);
+    }
+
     @Override
     public Tokenizer create() {
         if (tokenizerFactory != null) {
-            return tokenizerFactory.create();
+            // the delegate is built on the first non-empty input, not for the empty stream an index checks its analyzers with
+            return tokenizerFactory.isBuilt() ? createStream() : new DeferredTokenizer(this::createStream);
         }
+        fessAnalysisService.onFallback(ComponentType.TOKENIZER);
         return new EmptyTokenizer();
     }
 
-}
+    private Tokenizer createStream() {
+        Tokenizer tokenizer = tokenizerPool != null ? new PooledTokenizer(tokenizerPool) : createTokenizer();
+        if (chunkSize > 0) {
+            tokenizer = new ChunkingTokenizer(tokenizer, chunkSize);
+        }
+        if (tokenCache != null) {
+            tokenizer = new CachingTokenizer(tokenizer, tokenCache);
+        }
+        return analysisMetrics != null ? new InstrumentedTokenizer(tokenizer, analysisMetrics) : tokenizer;
+    }
+
+    private Tokenizer createTokenizer() {
+        final Tokenizer tokenizer = tokenizerFactory.get().create();
+        return eojeolCache != null ? new EojeolCachingTokenizer(tokenizer, eojeolCache) : tokenizer;
+    }
+
+}
\ No newline at end of file
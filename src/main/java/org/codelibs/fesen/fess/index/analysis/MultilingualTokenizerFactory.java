@@ -0,0 +1,97 @@
+/*
+ * Copyright 2009-2016 the CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package org.codelibs.fesen.fess.index.analysis;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.ChunkingTokenizer;
+import org.codelibs.fesen.fess.analysis.EmptyTokenizer;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenizer;
+import org.codelibs.fesen.fess.analysis.MultilingualTokenizer;
+import org.codelibs.fesen.fess.analysis.MultilingualTokenizer.Language;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AbstractTokenizerFactory;
+import org.codelibs.fesen.index.analysis.TokenizerFactory;
+
+/**
+ * Tokenizes each script run with fess_japanese_tokenizer, fess_korean_tokenizer, fess_simplified_chinese_tokenizer
+ * or fess_vietnamese_tokenizer, configured by the settings prefixed with japanese., korean., chinese. and vietnamese.
+ * Other runs, and runs of a language whose delegate is not installed, use the standard tokenizer.
+ */
+public class MultilingualTokenizerFactory extends AbstractTokenizerFactory {
+
+    private final Map<Language, TokenizerFactory> tokenizerFactories = new EnumMap<>(Language.class);
+
+    private final AnalysisMetrics analysisMetrics;
+
+    private final int chunkSize;
+
+    public MultilingualTokenizerFactory(final IndexSettings indexSettings, final Environment env, final String name,
+            final Settings settings, final FessAnalysisService fessAnalysisService) {
+        super(indexSettings, settings, name);
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKENIZER, name, settings);
+        // runs are read from the whole input
+        chunkSize = fessAnalysisService.getBoundedChunkSize(name, settings);
+
+        tokenizerFactories.put(Language.JAPANESE, new JapaneseTokenizerFactory(indexSettings, env, getName(name, Language.JAPANESE),
+                getSettings(settings, Language.JAPANESE), fessAnalysisService));
+        tokenizerFactories.put(Language.KOREAN, new KoreanTokenizerFactory(indexSettings, env, getName(name, Language.KOREAN),
+                getSettings(settings, Language.KOREAN), fessAnalysisService));
+        tokenizerFactories.put(Language.CHINESE, new ChineseTokenizerFactory(indexSettings, env, getName(name, Language.CHINESE),
+                getSettings(settings, Language.CHINESE), fessAnalysisService));
+        tokenizerFactories.put(Language.VIETNAMESE, new VietnameseTokenizerFactory(indexSettings, env,
+                getName(name, Language.VIETNAMESE), getSettings(settings, Language.VIETNAMESE), fessAnalysisService));
+    }
+
+    private static String getName(final String name, final Language language) {
+        // pools, caches and metrics are keyed by name
+        return name + "_" + language.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static Settings getSettings(final Settings settings, final Language language) {
+        return settings.getByPrefix(language.name().toLowerCase(Locale.ROOT) + ".");
+    }
+
+    @Override
+    public Tokenizer create() {
+        Tokenizer tokenizer = new MultilingualTokenizer(this::createTokenizer);
+        if (chunkSize > 0) {
+            tokenizer = new ChunkingTokenizer(tokenizer, chunkSize);
+        }
+        return analysisMetrics != null ? new InstrumentedTokenizer(tokenizer, analysisMetrics) : tokenizer;
+    }
+
+    private Tokenizer createTokenizer(final Language language) {
+        final TokenizerFactory tokenizerFactory = tokenizerFactories.get(language);
+        final Tokenizer tokenizer = tokenizerFactory != null ? tokenizerFactory.create() : null;
+        if (tokenizer == null || tokenizer instanceof EmptyTokenizer) {
+            return new StandardTokenizer();
+        }
+        return tokenizer;
+    }
+
+}
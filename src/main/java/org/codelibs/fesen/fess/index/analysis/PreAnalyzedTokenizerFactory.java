@@ -0,0 +1,50 @@
+/*
+ * Copyright 2009-2016 the CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package org.codelibs.fesen.fess.index.analysis;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenizer;
+import org.codelibs.fesen.fess.analysis.PreAnalyzedTokenizer;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AbstractTokenizerFactory;
+
+/**
+ * Replays the tokens written by the fess_analyze ingest processor. The tokens are not chunked,
+ * and token filters of the analyzer, e.g. of each multi-field, apply to them as to the tokens of any tokenizer.
+ */
+public class PreAnalyzedTokenizerFactory extends AbstractTokenizerFactory {
+
+    private final AnalysisMetrics analysisMetrics;
+
+    public PreAnalyzedTokenizerFactory(final IndexSettings indexSettings, final Environment env, final String name,
+            final Settings settings, final FessAnalysisService fessAnalysisService) {
+        super(indexSettings, settings, name);
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKENIZER, name, settings);
+    }
+
+    @Override
+    public Tokenizer create() {
+        final Tokenizer tokenizer = new PreAnalyzedTokenizer();
+        return analysisMetrics != null ? new InstrumentedTokenizer(tokenizer, analysisMetrics) : tokenizer;
+    }
+
+}
@@ -16,16 +16,21 @@
 
 package org.codelibs.fesen.fess.index.analysis;
 
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
+import java.nio.file.Path;
 
 import org.apache.lucene.analysis.Tokenizer;
-import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.ChunkingTokenizer;
+import org.codelibs.fesen.fess.analysis.DeferredTokenizer;
 import org.codelibs.fesen.fess.analysis.EmptyTokenizer;
+import org.codelibs.fesen.fess.analysis.InstrumentedTokenizer;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
+import org.codelibs.fesen.fess.service.ReloadableDelegate;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractTokenizerFactory;
 import org.codelibs.fesen.index.analysis.TokenizerFactory;
@@ -35,41 +40,59 @@ public class ReloadableJapaneseTokenizerFactory extends AbstractTokenizerFactory
     private static final String[] FACTORIES = { //
             "org.codelibs.fesen.extension.analysis.ReloadableKuromojiTokenizerFactory" };
 
-    private TokenizerFactory tokenizerFactory = null;
+    private LazyInstance<ReloadableDelegate<TokenizerFactory>> tokenizerFactory = null;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
+
+    private final int chunkSize;
 
     public ReloadableJapaneseTokenizerFactory(final IndexSettings indexSettings, final Environment env, final String name,
             final Settings settings, final FessAnalysisService fessAnalysisService) {
         super(indexSettings, settings, name);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.TOKENIZER, name, settings);
+        chunkSize = fessAnalysisService.getChunkSize(name, settings);
 
         for (final String factoryClass : FACTORIES) {
-            final Class<?> tokenizerFactoryClass = fessAnalysisService.loadClass(factoryClass);
-            if (tokenizerFactoryClass != null) {
+            final DelegateProvider<TokenizerFactory> provider = fessAnalysisService.loadProvider(factoryClass, TokenizerFactory.class);
+            if (provider != null) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} is found.", factoryClass);
                 }
-                tokenizerFactory = AccessController.doPrivileged((PrivilegedAction<TokenizerFactory>) () -> {
-                    try {
-                        final Constructor<?> constructor =
-                                tokenizerFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                        return (TokenizerFactory) constructor.newInstance(indexSettings, env, name, settings);
-                    } catch (final Exception e) {
-                        throw new FesenException("Failed to load " + factoryClass, e);
-                    }
-                });
+                final String userDictionary = settings.get("user_dictionary");
+                final Path userDictionaryPath = userDictionary != null ? env.configFile().resolve(userDictionary) : null;
+                tokenizerFactory = fessAnalysisService.createLazyInstance(settings, () -> fessAnalysisService
+                        .createReloadableInstance(provider, indexSettings, env, name, settings, userDictionaryPath));
                 break;
             }
             if (logger.isDebugEnabled()) {
                 logger.debug("{} is not found.", factoryClass);
             }
         }
+
+        if (tokenizerFactory == null) {
+            fessAnalysisService.onDelegateNotFound(ComponentType.TOKENIZER, indexSettings, name, settings, FACTORIES);
+        }
     }
 
     @Override
     public Tokenizer create() {
         if (tokenizerFactory != null) {
-            return tokenizerFactory.create();
+            // the delegate is built on the first non-empty input, not for the empty stream an index checks its analyzers with
+            return tokenizerFactory.isBuilt() ? createStream() : new DeferredTokenizer(this::createStream);
         }
+        fessAnalysisService.onFallback(ComponentType.TOKENIZER);
         return new EmptyTokenizer();
     }
 
+    private Tokenizer createStream() {
+        Tokenizer tokenizer = tokenizerFactory.get().get().create();
+        if (chunkSize > 0) {
+            tokenizer = new ChunkingTokenizer(tokenizer, chunkSize);
+        }
+        return analysisMetrics != null ? new InstrumentedTokenizer(tokenizer, analysisMetrics) : tokenizer;
+    }
+
 }
@@ -17,52 +17,99 @@
 package org.codelibs.fesen.fess.index.analysis;
 
 import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
-import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.ChineseConvertCharFilter;
+import org.codelibs.fesen.fess.analysis.ChineseConverter;
+import org.codelibs.fesen.fess.analysis.DeferredCharFilter;
+import org.codelibs.fesen.fess.analysis.InstrumentedCharFilter;
+import org.codelibs.fesen.fess.service.ComponentType;
+import org.codelibs.fesen.fess.service.DelegateProvider;
 import org.codelibs.fesen.fess.service.FessAnalysisService;
+import org.codelibs.fesen.fess.service.LazyInstance;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.AbstractCharFilterFactory;
 import org.codelibs.fesen.index.analysis.CharFilterFactory;
 
+/**
+ * Converts Chinese text with STConvert, passing it through unchanged if STConvert is not installed as before.
+ * With engine: builtin, the bundled converter is used instead. It only supports convert_type, so that an index
+ * relying on other STConvert options fails to be created instead of being analyzed differently.
+ */
 public class TraditionalChineseConvertCharFilterFactory extends AbstractCharFilterFactory {
 
     private static final String FACTORY = "org.elasticsearch.index.analysis.STConvertCharFilterFactory";
 
-    private CharFilterFactory charFilterFactory = null;
+    private static final String ENGINE_BUILTIN = "builtin";
+
+    private static final String ENGINE_STCONVERT = "stconvert";
+
+    private static final Set<String> BUILTIN_SETTINGS =
+            new HashSet<>(Arrays.asList("type", "engine", "convert_type", "lazy", "instrument", "strict"));
+
+    private LazyInstance<CharFilterFactory> charFilterFactory = null;
+
+    private LazyInstance<ChineseConverter> converter = null;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final AnalysisMetrics analysisMetrics;
 
     public TraditionalChineseConvertCharFilterFactory(final IndexSettings indexSettings, final Environment env, final String name,
             final Settings settings, final FessAnalysisService fessAnalysisService) {
         super(indexSettings, name);
+        this.fessAnalysisService = fessAnalysisService;
+        analysisMetrics = fessAnalysisService.getAnalysisMetrics(ComponentType.CHAR_FILTER, name, settings);
 
-        final Class<?> charFilterFactoryClass = fessAnalysisService.loadClass(FACTORY);
-        if (charFilterFactoryClass != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("{} is found.", FACTORY);
+        final String engine = settings.get("engine", ENGINE_STCONVERT);
+        if (ENGINE_BUILTIN.equals(engine)) {
+            for (final String key : settings.keySet()) {
+                if (!BUILTIN_SETTINGS.contains(key)) {
+                    throw new IllegalArgumentException("[" + key + "] is not supported by engine [" + ENGINE_BUILTIN + "] of [" + name
+                            + "], use engine [" + ENGINE_STCONVERT + "].");
+                }
             }
-            charFilterFactory = AccessController.doPrivileged((PrivilegedAction<CharFilterFactory>) () -> {
-                try {
-                    final Constructor<?> constructor =
-                            charFilterFactoryClass.getConstructor(IndexSettings.class, Environment.class, String.class, Settings.class);
-                    return (CharFilterFactory) constructor.newInstance(indexSettings, env, name, settings);
-                } catch (final Exception e) {
-                    throw new FesenException("Failed to load " + FACTORY, e);
+            final ChineseConverter.Type type = ChineseConverter.Type.of(settings.get("convert_type", "s2t"));
+            converter = fessAnalysisService.createLazyInstance(settings, () -> ChineseConverter.getInstance(type));
+        } else if (ENGINE_STCONVERT.equals(engine)) {
+            final DelegateProvider<CharFilterFactory> provider = fessAnalysisService.loadProvider(FACTORY, CharFilterFactory.class);
+            if (provider != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{} is found.", FACTORY);
                 }
-            });
-        } else if (logger.isDebugEnabled()) {
-            logger.debug("{} is not found.", FACTORY);
+                charFilterFactory = fessAnalysisService.createLazyInstance(settings,
+                        () -> fessAnalysisService.createSharedInstance(provider, indexSettings, env, name, settings));
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("{} is not found.", FACTORY);
+            }
+
+            if (charFilterFactory == null) {
+                fessAnalysisService.onDelegateNotFound(ComponentType.CHAR_FILTER, indexSettings, name, settings, FACTORY);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown engine [" + engine + "] for [" + name + "], expected [" + ENGINE_BUILTIN + "] or ["
+                    + ENGINE_STCONVERT + "].");
         }
     }
 
     @Override
     public Reader create(final Reader reader) {
-        if (charFilterFactory != null) {
-            return charFilterFactory.create(reader);
+        if (converter != null) {
+            // the converter is built on the first char, not for the empty stream an index checks its analyzers with
+            final Reader charFilter = converter.isBuilt() ? new ChineseConvertCharFilter(reader, converter.get())
+                    : new DeferredCharFilter(reader, input -> new ChineseConvertCharFilter(input, converter.get()));
+            return analysisMetrics != null ? new InstrumentedCharFilter(charFilter, analysisMetrics) : charFilter;
+        } else if (charFilterFactory != null) {
+            final Reader charFilter = charFilterFactory.isBuilt() ? charFilterFactory.get().create(reader)
+                    : new DeferredCharFilter(reader, input -> charFilterFactory.get().create(input));
+            return analysisMetrics != null ? new InstrumentedCharFilter(charFilter, analysisMetrics) : charFilter;
         }
+        fessAnalysisService.onFallback(ComponentType.CHAR_FILTER);
         return reader;
     }
 }
\ No newline at end of file
@@ -0,0 +1,272 @@
+package org.codelibs.fesen.fess.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.TokenStream;
+import org.codelibs.fesen.cluster.ClusterChangedEvent;
+import org.codelibs.fesen.cluster.ClusterStateListener;
+import org.codelibs.fesen.core.internal.io.IOUtils;
+import org.codelibs.fesen.fess.analysis.PreAnalyzedTokenizer;
+import org.codelibs.fesen.index.analysis.AnalysisRegistry;
+import org.codelibs.fesen.index.analysis.NameOrDefinition;
+import org.codelibs.fesen.ingest.AbstractProcessor;
+import org.codelibs.fesen.ingest.ConfigurationUtils;
+import org.codelibs.fesen.ingest.IngestDocument;
+import org.codelibs.fesen.ingest.IngestMetadata;
+import org.codelibs.fesen.ingest.IngestService;
+import org.codelibs.fesen.ingest.Processor;
+
+/**
+ * Analyzes a field once on the ingest node and writes its tokens, encoded for {@link PreAnalyzedTokenizer}, into the target field.
+ * The target field is mapped as text with an analyzer of fess_pre_analyzed_tokenizer, so that the field and its multi-fields
+ * are indexed from the tokens without the tokenizer running again. The offsets are those of the source field.
+ * The analyzer is a node-level analyzer, or is defined by tokenizer, char_filter and filter as in the _analyze API.
+ * A defined analyzer is built once per definition on the node and shared by the pipelines using it,
+ * and it is closed once no pipeline uses it.
+ * <p>
+ * The encoded tokens are much larger than the text. Exclude the target field from _source in its mapping,
+ * e.g. {@code "_source": {"excludes": ["content_tokens"]}}, so that they are only indexed.
+ */
+public final class FessAnalyzeProcessor extends AbstractProcessor {
+
+    public static final String TYPE = "fess_analyze";
+
+    private final String field;
+
+    private final String targetField;
+
+    private final Analyzer analyzer;
+
+    private final boolean ignoreMissing;
+
+    FessAnalyzeProcessor(final String tag, final String description, final String field, final String targetField,
+            final Analyzer analyzer, final boolean ignoreMissing) {
+        super(tag, description);
+        this.field = field;
+        this.targetField = targetField;
+        this.analyzer = analyzer;
+        this.ignoreMissing = ignoreMissing;
+    }
+
+    @Override
+    public IngestDocument execute(final IngestDocument document) throws Exception {
+        final Object value = document.getFieldValue(field, Object.class, ignoreMissing);
+        if (value == null) {
+            if (ignoreMissing) {
+                return document;
+            }
+            throw new IllegalArgumentException("field [" + field + "] is null, cannot analyze it.");
+        }
+        if (value instanceof List) {
+            final List<?> values = (List<?>) value;
+            final List<String> tokens = new ArrayList<>(values.size());
+            for (final Object v : values) {
+                tokens.add(analyze(v));
+            }
+            document.setFieldValue(targetField, tokens);
+        } else {
+            document.setFieldValue(targetField, analyze(value));
+        }
+        return document;
+    }
+
+    private String analyze(final Object value) throws IOException {
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("field [" + field + "] of type [" + value.getClass().getName()
+                    + "] cannot be cast to [" + String.class.getName() + "]");
+        }
+        try (TokenStream stream = analyzer.tokenStream(field, (String) value)) {
+            return PreAnalyzedTokenizer.encode(stream);
+        }
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public static final class Factory implements Processor.Factory, ClusterStateListener, Closeable {
+
+        private static final Logger logger = LogManager.getLogger(Factory.class);
+
+        private final AnalysisRegistry analysisRegistry;
+
+        private final IngestService ingestService;
+
+        // pipelines are created again on every cluster state change that updates them
+        private final Map<String, CachedAnalyzer> analyzers = new ConcurrentHashMap<>();
+
+        // incremented when the pipelines change
+        private final AtomicLong generation = new AtomicLong();
+
+        private final LongAdder evictions = new LongAdder();
+
+        public Factory(final AnalysisRegistry analysisRegistry, final IngestService ingestService) {
+            this.analysisRegistry = analysisRegistry;
+            this.ingestService = ingestService;
+        }
+
+        @Override
+        public FessAnalyzeProcessor create(final Map<String, Processor.Factory> registry, final String tag, final String description,
+                final Map<String, Object> config) throws Exception {
+            final String field = ConfigurationUtils.readStringProperty(TYPE, tag, config, "field");
+            final String targetField = ConfigurationUtils.readStringProperty(TYPE, tag, config, "target_field", field + "_tokens");
+            final boolean ignoreMissing = ConfigurationUtils.readBooleanProperty(TYPE, tag, config, "ignore_missing", false);
+            final String analyzerName = ConfigurationUtils.readOptionalStringProperty(TYPE, tag, config, "analyzer");
+            final Object tokenizer = config.remove("tokenizer");
+            final List<Object> charFilters = readOptionalList(tag, config, "char_filter");
+            final List<Object> tokenFilters = readOptionalList(tag, config, "filter");
+
+            final Analyzer analyzer;
+            if (analyzerName != null) {
+                if (tokenizer != null || !charFilters.isEmpty() || !tokenFilters.isEmpty()) {
+                    throw ConfigurationUtils.newConfigurationException(TYPE, tag, "analyzer",
+                            "cannot be set with [tokenizer], [char_filter] or [filter]");
+                }
+                analyzer = analysisRegistry.getAnalyzer(analyzerName);
+                if (analyzer == null) {
+                    throw ConfigurationUtils.newConfigurationException(TYPE, tag, "analyzer",
+                            "failed to find analyzer [" + analyzerName + "]");
+                }
+            } else if (tokenizer != null) {
+                analyzer = getAnalyzer(tag, tokenizer, charFilters, tokenFilters);
+            } else {
+                throw ConfigurationUtils.newConfigurationException(TYPE, tag, "analyzer", "[analyzer] or [tokenizer] is required");
+            }
+            return new FessAnalyzeProcessor(tag, description, field, targetField, analyzer, ignoreMissing);
+        }
+
+        private Analyzer getAnalyzer(final String tag, final Object tokenizer, final List<Object> charFilters,
+                final List<Object> tokenFilters) throws IOException {
+            final String key = tokenizer + "|" + charFilters + "|" + tokenFilters;
+            final CachedAnalyzer cached = analyzers.get(key);
+            if (cached != null) {
+                cached.generation = generation.get();
+                return cached.analyzer;
+            }
+            final Analyzer analyzer;
+            try {
+                analyzer = analysisRegistry.buildCustomAnalyzer(null, false, toComponent(tag, "tokenizer", tokenizer),
+                        toComponents(tag, "char_filter", charFilters), toComponents(tag, "filter", tokenFilters));
+            } catch (final IllegalArgumentException e) {
+                throw ConfigurationUtils.newConfigurationException(TYPE, tag, "tokenizer", e);
+            }
+            final CachedAnalyzer previous = analyzers.putIfAbsent(key, new CachedAnalyzer(analyzer, generation.get()));
+            if (previous != null) {
+                // built concurrently for another pipeline
+                analyzer.close();
+                previous.generation = generation.get();
+                return previous.analyzer;
+            }
+            return analyzer;
+        }
+
+        /**
+         * Closes the analyzers that no pipeline uses once the pipelines have been created again.
+         * An analyzer returned since the previous change, e.g. for a simulated pipeline, is kept until the next one.
+         */
+        @Override
+        public void clusterChanged(final ClusterChangedEvent event) {
+            if (analyzers.isEmpty() || !event.changedCustomMetadataSet().contains(IngestMetadata.TYPE)) {
+                return;
+            }
+            final Set<Analyzer> used = Collections.newSetFromMap(new IdentityHashMap<>());
+            final IngestMetadata ingestMetadata = event.state().metadata().custom(IngestMetadata.TYPE);
+            if (ingestMetadata != null) {
+                for (final String id : ingestMetadata.getPipelines().keySet()) {
+                    if (ingestService.getPipeline(id) != null) {
+                        ingestService.getProcessorsInPipeline(id, FessAnalyzeProcessor.class)
+                                .forEach(processor -> used.add(processor.getAnalyzer()));
+                    }
+                }
+            }
+            final long previousGeneration = generation.getAndIncrement();
+            final List<Analyzer> closing = new ArrayList<>();
+            for (final String key : analyzers.keySet()) {
+                analyzers.computeIfPresent(key, (k, v) -> {
+                    if (used.contains(v.analyzer) || v.generation >= previousGeneration) {
+                        return v;
+                    }
+                    closing.add(v.analyzer);
+                    return null;
+                });
+            }
+            if (!closing.isEmpty()) {
+                evictions.add(closing.size());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Closing {} analyzers no pipeline uses.", closing.size());
+                }
+                IOUtils.closeWhileHandlingException(closing);
+            }
+        }
+
+        public Map<String, Object> getStats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("analyzers", analyzers.size());
+            stats.put("evictions", evictions.sum());
+            return stats;
+        }
+
+        @Override
+        public void close() throws IOException {
+            final List<Analyzer> closing = new ArrayList<>();
+            analyzers.values().forEach(cached -> closing.add(cached.analyzer));
+            analyzers.clear();
+            IOUtils.close(closing);
+        }
+
+        private static List<Object> readOptionalList(final String tag, final Map<String, Object> config, final String key) {
+            final List<Object> values = ConfigurationUtils.readOptionalList(TYPE, tag, config, key);
+            return values != null ? values : Collections.emptyList();
+        }
+
+        private static List<NameOrDefinition> toComponents(final String tag, final String key, final List<Object> values) {
+            final List<NameOrDefinition> components = new ArrayList<>(values.size());
+            for (final Object value : values) {
+                components.add(toComponent(tag, key, value));
+            }
+            return components;
+        }
+
+        private static NameOrDefinition toComponent(final String tag, final String key, final Object value) {
+            if (value instanceof String) {
+                return new NameOrDefinition((String) value);
+            } else if (value instanceof Map) {
+                @SuppressWarnings("unchecked")
+                final Map<String, ?> definition = (Map<String, ?>) value;
+                return new NameOrDefinition(definition);
+            }
+            throw ConfigurationUtils.newConfigurationException(TYPE, tag, key, "expected a name or a definition");
+        }
+
+        private static class CachedAnalyzer {
+            private final Analyzer analyzer;
+
+            // the generation it was last returned in
+            private volatile long generation;
+
+            CachedAnalyzer(final Analyzer analyzer, final long generation) {
+                this.analyzer = analyzer;
+                this.generation = generation;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.codelibs.fesen.fess.rest;
+
+import static org.codelibs.fesen.rest.RestRequest.Method.GET;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codelibs.fesen.client.node.NodeClient;
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.fess.action.FessAnalysisStatsAction;
+import org.codelibs.fesen.fess.action.FessAnalysisStatsRequest;
+import org.codelibs.fesen.rest.BaseRestHandler;
+import org.codelibs.fesen.rest.RestRequest;
+import org.codelibs.fesen.rest.action.RestActions.NodesResponseRestListener;
+
+public class RestFessAnalysisStatsAction extends BaseRestHandler {
+
+    @Override
+    public String getName() {
+        return "fess_analysis_stats_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return Collections.unmodifiableList(Arrays.asList(//
+                new Route(GET, "/_fess/analysis/_stats"), //
+                new Route(GET, "/_fess/analysis/{nodeId}/_stats")));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+        final String[] nodesIds = Strings.splitStringByCommaToArray(request.param("nodeId"));
+        final FessAnalysisStatsRequest statsRequest = new FessAnalysisStatsRequest(nodesIds);
+        statsRequest.timeout(request.param("timeout"));
+        return channel -> client.execute(FessAnalysisStatsAction.INSTANCE, statsRequest, new NodesResponseRestListener<>(channel));
+    }
+}
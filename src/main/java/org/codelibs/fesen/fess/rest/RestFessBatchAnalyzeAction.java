@@ -0,0 +1,66 @@
+package org.codelibs.fesen.fess.rest;
+
+import static org.codelibs.fesen.rest.RestRequest.Method.GET;
+import static org.codelibs.fesen.rest.RestRequest.Method.POST;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fesen.client.node.NodeClient;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.fess.action.FessBatchAnalyzeAction;
+import org.codelibs.fesen.fess.action.FessBatchAnalyzeRequest;
+import org.codelibs.fesen.fess.action.TransportFessBatchAnalyzeAction;
+import org.codelibs.fesen.rest.BaseRestHandler;
+import org.codelibs.fesen.rest.RestRequest;
+import org.codelibs.fesen.rest.action.RestToXContentListener;
+
+public class RestFessBatchAnalyzeAction extends BaseRestHandler {
+
+    private final int maxTexts;
+
+    public RestFessBatchAnalyzeAction(final Settings settings) {
+        maxTexts = TransportFessBatchAnalyzeAction.MAX_TEXTS_SETTING.get(settings);
+    }
+
+    @Override
+    public String getName() {
+        return "fess_batch_analyze_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return Collections.unmodifiableList(Arrays.asList(//
+                new Route(GET, "/_fess/analyze/_batch"), //
+                new Route(POST, "/_fess/analyze/_batch"), //
+                new Route(GET, "/{index}/_fess/analyze/_batch"), //
+                new Route(POST, "/{index}/_fess/analyze/_batch")));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) throws IOException {
+        final FessBatchAnalyzeRequest analyzeRequest = new FessBatchAnalyzeRequest(request.param("index")).maxTexts(maxTexts);
+        try (XContentParser parser = request.contentOrSourceParamParser()) {
+            final Map<String, Object> source = parser.map();
+            for (final Map.Entry<String, Object> entry : source.entrySet()) {
+                final String key = entry.getKey();
+                final Object value = entry.getValue();
+                if ("analyzer".equals(key) && value instanceof String) {
+                    analyzeRequest.analyzer((String) value);
+                } else if ("text".equals(key) && value instanceof String) {
+                    analyzeRequest.texts((String) value);
+                } else if ("text".equals(key) && value instanceof List) {
+                    analyzeRequest.texts(((List<?>) value).stream().map(String::valueOf).toArray(String[]::new));
+                } else {
+                    throw new IllegalArgumentException("Unknown parameter [" + key + "] in request body or parameter is of the wrong type["
+                            + (value != null ? value.getClass().getSimpleName() : null) + "] ");
+                }
+            }
+        }
+        return channel -> client.execute(FessBatchAnalyzeAction.INSTANCE, analyzeRequest, new RestToXContentListener<>(channel));
+    }
+}
@@ -0,0 +1,196 @@
+package org.codelibs.fesen.fess.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.xcontent.DeprecationHandler;
+import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentFactory;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.common.xcontent.XContentType;
+
+/**
+ * Records which delegate and user dictionary each shared instance of this node was built with,
+ * together with the indices using it, in a manifest under the node data path.
+ * After a restart, only the entries of the indices still stored on this node are loaded.
+ */
+public class AnalysisManifest {
+
+    private static final Logger logger = LogManager.getLogger(AnalysisManifest.class);
+
+    public static final String FILE_NAME = "manifest.json";
+
+    private static final int VERSION = 1;
+
+    private final Path path;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    public AnalysisManifest(final Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Records that the index uses the shared instance of the key.
+     */
+    public void add(final String key, final String delegate, final Path userDictionary, final String indexUuid) {
+        entries.compute(key, (k, v) -> {
+            final Entry entry = v != null ? v : new Entry(delegate, userDictionary);
+            if (entry.indices.add(indexUuid)) {
+                dirty.set(true);
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Removes the index, and the entries no other index uses.
+     */
+    public void removeIndex(final String indexUuid) {
+        for (final String key : entries.keySet()) {
+            entries.computeIfPresent(key, (k, v) -> {
+                if (v.indices.remove(indexUuid)) {
+                    dirty.set(true);
+                    return v.indices.isEmpty() ? null : v;
+                }
+                return v;
+            });
+        }
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * Loads the entries of the indices still stored on this node.
+     */
+    public void load(final Set<String> localIndices) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        final Map<String, Object> content;
+        try (InputStream in = Files.newInputStream(path); XContentParser parser = XContentType.JSON.xContent()
+                .createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, in)) {
+            content = parser.map();
+        }
+        if (!Objects.equals(VERSION, content.get("version"))) {
+            logger.info("Ignore {} of version {}.", path, content.get("version"));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        final Map<String, Map<String, Object>> configurations = (Map<String, Map<String, Object>>) content.get("configurations");
+        if (configurations == null) {
+            return;
+        }
+        configurations.forEach((key, value) -> {
+            final String userDictionary = (String) value.get("user_dictionary");
+            final Entry entry = new Entry((String) value.get("delegate"), userDictionary != null ? Paths.get(userDictionary) : null);
+            @SuppressWarnings("unchecked")
+            final List<String> indices = (List<String>) value.get("indices");
+            if (indices != null) {
+                indices.stream().filter(localIndices::contains).forEach(entry.indices::add);
+            }
+            if (indices == null || entry.indices.size() < indices.size()) {
+                // removed while this node was down
+                dirty.set(true);
+            }
+            if (entry.delegate != null && !entry.indices.isEmpty()) {
+                entries.put(key, entry);
+            }
+        });
+        if (logger.isDebugEnabled()) {
+            logger.debug("Loaded {} configurations from {}", entries.size(), path);
+        }
+    }
+
+    /**
+     * Writes the entries if they changed, replacing the manifest atomically.
+     */
+    public synchronized void store() throws IOException {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            final XContentBuilder builder = XContentFactory.jsonBuilder().prettyPrint();
+            builder.startObject();
+            builder.field("version", VERSION);
+            builder.startObject("configurations");
+            for (final Map.Entry<String, Entry> e : new TreeMap<>(entries).entrySet()) {
+                final Entry entry = e.getValue();
+                builder.startObject(e.getKey());
+                builder.field("delegate", entry.delegate);
+                if (entry.userDictionary != null) {
+                    builder.field("user_dictionary", entry.userDictionary.toString());
+                }
+                builder.field("indices", entry.indices.stream().sorted().collect(Collectors.toList()));
+                builder.endObject();
+            }
+            builder.endObject();
+            builder.endObject();
+            Files.createDirectories(path.getParent());
+            final Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tempFile, Strings.toString(builder).getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            dirty.set(true);
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("configurations", entries.size());
+        return stats;
+    }
+
+    public static class Entry {
+        private final String delegate;
+
+        private final Path userDictionary;
+
+        private final Set<String> indices = ConcurrentHashMap.newKeySet();
+
+        Entry(final String delegate, final Path userDictionary) {
+            this.delegate = delegate;
+            this.userDictionary = userDictionary;
+        }
+
+        public String getDelegate() {
+            return delegate;
+        }
+
+        public Path getUserDictionary() {
+            return userDictionary;
+        }
+
+        public Set<String> getIndices() {
+            return indices;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package org.codelibs.fesen.fess.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.codelibs.fesen.Version;
+import org.codelibs.fesen.cluster.ClusterState;
+import org.codelibs.fesen.cluster.metadata.IndexMetadata;
+import org.codelibs.fesen.cluster.routing.RoutingNode;
+import org.codelibs.fesen.cluster.routing.ShardRouting;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.util.LazyInitializable;
+import org.codelibs.fesen.common.util.concurrent.EsExecutors;
+import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.fess.FessAnalysisPlugin;
+import org.codelibs.fesen.index.Index;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AnalyzerProvider;
+import org.codelibs.fesen.index.analysis.CharFilterFactory;
+import org.codelibs.fesen.index.analysis.TokenFilterFactory;
+import org.codelibs.fesen.index.analysis.TokenizerFactory;
+import org.codelibs.fesen.indices.analysis.AnalysisModule.AnalysisProvider;
+import org.codelibs.fesen.threadpool.ThreadPool;
+
+/**
+ * Builds the fess_* components of the indices in the recovered cluster state once their shards are allocated to this node,
+ * so that the first request to each index does not wait for delegates and dictionaries.
+ * Each distinct configuration is built once on a fork-join pool and analyzes a short sample.
+ * Token filters, which need the attributes of a tokenizer, filter the tokens of a fess_japanese_tokenizer
+ * that is built for the warm-up only and shared with no index.
+ * Delegates are acquired for a warm-up owner of each index, and handed over to the index service afterwards,
+ * or released if the index is no longer allocated to this node.
+ */
+public class AnalysisWarmer {
+
+    private static final Logger logger = LogManager.getLogger(AnalysisWarmer.class);
+
+    public static final Setting<Boolean> WARMUP_ENABLED_SETTING = Setting.boolSetting("fess.analysis.warmup.enabled", false,
+            Property.NodeScope);
+
+    // 0 for the number of allocated processors
+    public static final Setting<Integer> WARMUP_PARALLELISM_SETTING = Setting.intSetting("fess.analysis.warmup.parallelism", 0, 0,
+            Property.NodeScope);
+
+    private static final String FILTER_TOKENIZER = "fess_japanese_tokenizer";
+
+    // the name of the index that owns the delegates acquired by the warm-up
+    private static final String OWNER_PREFIX = ".fess_warmup-";
+
+    private static final String SAMPLE = "東京都に住んでいます。한국어 형태소 분석기입니다. "//
+            + "Tiếng Việt là ngôn ngữ. 中华人民共和国成立了。臺灣";
+
+    private final Settings settings;
+
+    private final Environment environment;
+
+    private final FessAnalysisService fessAnalysisService;
+
+    private final FessAnalysisPlugin plugin;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // UUIDs of the open indices in the recovered cluster state that are not warmed up yet, or null before it
+    private volatile Set<String> pendingIndices;
+
+    private volatile String status = "pending";
+
+    // updated by one warm-up at a time
+    private volatile int indices;
+
+    private volatile int configurations;
+
+    private final LongAdder failures = new LongAdder();
+
+    private volatile long tookInMillis;
+
+    public AnalysisWarmer(final Settings settings, final Environment environment, final FessAnalysisService fessAnalysisService,
+            final FessAnalysisPlugin plugin) {
+        this.settings = settings;
+        this.environment = environment;
+        this.fessAnalysisService = fessAnalysisService;
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts the warm-up of the pending indices that have shards allocated to this node on the generic pool,
+     * unless a warm-up is running. The first call takes the open indices of the recovered cluster state as pending.
+     */
+    public void start(final ClusterState state, final ThreadPool threadPool) {
+        if (pendingIndices == null) {
+            final Set<String> recovered = ConcurrentHashMap.newKeySet();
+            for (final IndexMetadata indexMetadata : state.metadata()) {
+                if (indexMetadata.getState() == IndexMetadata.State.OPEN) {
+                    recovered.add(indexMetadata.getIndexUUID());
+                }
+            }
+            pendingIndices = recovered;
+        }
+        final Set<String> pending = pendingIndices;
+        if (pending.isEmpty() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        final List<IndexMetadata> allocated = getAllocatedIndices(state, pending);
+        if (allocated.isEmpty()) {
+            running.set(false);
+            return;
+        }
+        allocated.forEach(indexMetadata -> pending.remove(indexMetadata.getIndexUUID()));
+        threadPool.generic().execute(() -> {
+            try {
+                warmUp(allocated);
+            } catch (final Exception e) {
+                status = "failed";
+                logger.warn("Failed to warm up analysis components.", e);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private static List<IndexMetadata> getAllocatedIndices(final ClusterState state, final Set<String> pending) {
+        final Set<String> localIndices = new HashSet<>();
+        final RoutingNode routingNode = state.getRoutingNodes().node(state.nodes().getLocalNodeId());
+        if (routingNode != null) {
+            for (final ShardRouting shardRouting : routingNode) {
+                localIndices.add(shardRouting.index().getUUID());
+            }
+        }
+        final Set<String> openIndices = new HashSet<>();
+        final List<IndexMetadata> allocated = new ArrayList<>();
+        for (final IndexMetadata indexMetadata : state.metadata()) {
+            final String uuid = indexMetadata.getIndexUUID();
+            if (indexMetadata.getState() == IndexMetadata.State.OPEN) {
+                openIndices.add(uuid);
+                if (pending.contains(uuid) && localIndices.contains(uuid)) {
+                    allocated.add(indexMetadata);
+                }
+            }
+        }
+        // closed or deleted since the recovery
+        pending.retainAll(openIndices);
+        return allocated;
+    }
+
+    private void warmUp(final List<IndexMetadata> allocated) throws IOException {
+        status = "running";
+        final long startTime = System.nanoTime();
+        final Map<String, Callable<Void>> tasks = new LinkedHashMap<>();
+        final Map<Index, Index> owners = new HashMap<>();
+        final LazyInitializable<TokenizerFactory, IOException> filterTokenizer =
+                new LazyInitializable<>(this::createFilterTokenizer);
+        for (final IndexMetadata indexMetadata : allocated) {
+            // the same index under another name, so that what it acquires can be told from what the index service does
+            final IndexMetadata ownerMetadata =
+                    IndexMetadata.builder(indexMetadata).index(OWNER_PREFIX + indexMetadata.getIndex().getName()).build();
+            owners.put(ownerMetadata.getIndex(), indexMetadata.getIndex());
+            final IndexSettings indexSettings = new IndexSettings(ownerMetadata, settings);
+            final Settings analysisSettings = indexSettings.getSettings().getAsSettings("index.analysis");
+            addTasks(tasks, indexSettings, analysisSettings.getGroups("tokenizer"), plugin.getTokenizers(), this::warmUpTokenizer);
+            addTasks(tasks, indexSettings, analysisSettings.getGroups("char_filter"), plugin.getCharFilters(), this::warmUpCharFilter);
+            addTasks(tasks, indexSettings, analysisSettings.getGroups("filter"), plugin.getTokenFilters(),
+                    filter -> warmUpTokenFilter(filterTokenizer.getOrCompute(), filter));
+            addTasks(tasks, indexSettings, analysisSettings.getGroups("analyzer"), plugin.getAnalyzers(), this::warmUpAnalyzer);
+            // pre-configured components referred to by analyzers
+            for (final Settings analyzer : analysisSettings.getGroups("analyzer").values()) {
+                addTask(tasks, indexSettings, analyzer.get("tokenizer"), analysisSettings.getGroups("tokenizer"), plugin.getTokenizers(),
+                        this::warmUpTokenizer);
+                for (final String charFilter : analyzer.getAsList("char_filter")) {
+                    addTask(tasks, indexSettings, charFilter, analysisSettings.getGroups("char_filter"), plugin.getCharFilters(),
+                            this::warmUpCharFilter);
+                }
+                for (final String filter : analyzer.getAsList("filter")) {
+                    addTask(tasks, indexSettings, filter, analysisSettings.getGroups("filter"), plugin.getTokenFilters(),
+                            tokenFilter -> warmUpTokenFilter(filterTokenizer.getOrCompute(), tokenFilter));
+                }
+            }
+        }
+        indices += allocated.size();
+        configurations += tasks.size();
+
+        try {
+            if (!tasks.isEmpty()) {
+                final int parallelism = WARMUP_PARALLELISM_SETTING.get(settings) > 0 ? WARMUP_PARALLELISM_SETTING.get(settings)
+                        : EsExecutors.allocatedProcessors(settings);
+                final int poolSize = Math.min(parallelism, tasks.size());
+                final ForkJoinPool pool =
+                        AccessController.doPrivileged((PrivilegedAction<ForkJoinPool>) () -> new ForkJoinPool(poolSize));
+                try {
+                    pool.invokeAll(new ArrayList<>(tasks.values()));
+                } finally {
+                    AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+                        pool.shutdown();
+                        return null;
+                    });
+                }
+            }
+        } finally {
+            fessAnalysisService.handOverSharedInstances(owners);
+        }
+
+        final long took = (System.nanoTime() - startTime) / 1_000_000L;
+        tookInMillis += took;
+        status = "done";
+        logger.info("Warmed up {} analysis configurations of {} indices in {}ms ({} failures).", tasks.size(), allocated.size(), took,
+                failures.sum());
+    }
+
+    /**
+     * Returns a fess_japanese_tokenizer for an index without a UUID, so that its delegate is not shared and goes with the warm-up.
+     */
+    private TokenizerFactory createFilterTokenizer() throws IOException {
+        final IndexMetadata temporaryMetadata = IndexMetadata.builder(IndexMetadata.INDEX_UUID_NA_VALUE)//
+                .settings(Settings.builder().put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT))//
+                .numberOfShards(1)//
+                .numberOfReplicas(0)//
+                .build();
+        return plugin.getTokenizers().get(FILTER_TOKENIZER).get(new IndexSettings(temporaryMetadata, settings), environment,
+                FILTER_TOKENIZER, Settings.EMPTY);
+    }
+
+    private <T> void addTasks(final Map<String, Callable<Void>> tasks, final IndexSettings indexSettings,
+            final Map<String, Settings> groups, final Map<String, AnalysisProvider<T>> providers, final WarmUpAction<T> action) {
+        groups.forEach((name, componentSettings) -> {
+            final String type = componentSettings.get("type");
+            final AnalysisProvider<T> provider = type != null ? providers.get(type) : null;
+            if (provider != null) {
+                addTask(tasks, indexSettings, type, name, componentSettings, provider, action);
+            }
+        });
+    }
+
+    private <T> void addTask(final Map<String, Callable<Void>> tasks, final IndexSettings indexSettings, final String name,
+            final Map<String, Settings> groups, final Map<String, AnalysisProvider<T>> providers, final WarmUpAction<T> action) {
+        if (name == null || groups.containsKey(name)) {
+            // not a component, or a custom component added by addTasks
+            return;
+        }
+        final AnalysisProvider<T> provider = providers.get(name);
+        if (provider != null) {
+            addTask(tasks, indexSettings, name, name, Settings.EMPTY, provider, action);
+        }
+    }
+
+    private <T> void addTask(final Map<String, Callable<Void>> tasks, final IndexSettings indexSettings, final String type,
+            final String name, final Settings componentSettings, final AnalysisProvider<T> provider, final WarmUpAction<T> action) {
+        // keyed like the shared instances, so that a configuration used by many indices is built once
+        final String key = type + "[" + name + "]@" + indexSettings.getIndexVersionCreated().id + componentSettings.toString();
+        tasks.computeIfAbsent(key, k -> () -> {
+            try {
+                action.warmUp(provider.get(indexSettings, environment, name, componentSettings));
+            } catch (final Exception e) {
+                failures.increment();
+                logger.warn("Failed to warm up [" + name + "] of " + indexSettings.getIndex(), e);
+            }
+            return null;
+        });
+    }
+
+    private void warmUpTokenizer(final TokenizerFactory factory) throws IOException {
+        try (Tokenizer tokenizer = factory.create()) {
+            tokenizer.setReader(new StringReader(SAMPLE));
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                // consume
+            }
+            tokenizer.end();
+        }
+    }
+
+    private void warmUpCharFilter(final CharFilterFactory factory) throws IOException {
+        try (Reader reader = factory.create(new StringReader(SAMPLE))) {
+            final char[] buf = new char[256];
+            while (reader.read(buf) != -1) {
+                // consume
+            }
+        }
+    }
+
+    private void warmUpAnalyzer(final AnalyzerProvider<? extends Analyzer> provider) throws IOException {
+        try (TokenStream stream = provider.get().tokenStream("", SAMPLE)) {
+            stream.reset();
+            while (stream.incrementToken()) {
+                // consume
+            }
+            stream.end();
+        }
+    }
+
+    private void warmUpTokenFilter(final TokenizerFactory tokenizerFactory, final TokenFilterFactory factory) throws IOException {
+        final Tokenizer tokenizer = tokenizerFactory.create();
+        tokenizer.setReader(new StringReader(SAMPLE));
+        // builds the delegate of the filter
+        try (TokenStream stream = factory.create(tokenizer)) {
+            stream.reset();
+            while (stream.incrementToken()) {
+                // consume
+            }
+            stream.end();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("status", status);
+        stats.put("indices", indices);
+        stats.put("configurations", configurations);
+        stats.put("failures", failures.sum());
+        stats.put("took_in_millis", tookInMillis);
+        return stats;
+    }
+
+    @FunctionalInterface
+    private interface WarmUpAction<T> {
+        void warmUp(T factory) throws IOException;
+    }
+}
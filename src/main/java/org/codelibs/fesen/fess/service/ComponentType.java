@@ -0,0 +1,11 @@
+package org.codelibs.fesen.fess.service;
+
+import java.util.Locale;
+
+public enum ComponentType {
+    TOKENIZER, TOKEN_FILTER, CHAR_FILTER;
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
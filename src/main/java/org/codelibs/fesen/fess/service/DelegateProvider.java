@@ -0,0 +1,78 @@
+package org.codelibs.fesen.fess.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codelibs.fesen.FesenException;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.index.IndexSettings;
+
+public class DelegateProvider<T> {
+
+    private static final MethodType CONSTRUCTOR_TYPE =
+            MethodType.methodType(void.class, IndexSettings.class, Environment.class, String.class, Settings.class);
+
+    private static final MethodType INVOKE_TYPE =
+            MethodType.methodType(Object.class, IndexSettings.class, Environment.class, String.class, Settings.class);
+
+    private final Class<? extends T> delegateClass;
+
+    private final MethodHandle constructor;
+
+    private final String source;
+
+    private final LongAdder createdInstances = new LongAdder();
+
+    private final LongAdder constructionTime = new LongAdder();
+
+    DelegateProvider(final Class<? extends T> delegateClass, final String source) {
+        this.delegateClass = delegateClass;
+        this.source = source;
+        try {
+            this.constructor = MethodHandles.publicLookup().findConstructor(delegateClass, CONSTRUCTOR_TYPE).asType(INVOKE_TYPE);
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new FesenException("Failed to load " + delegateClass.getName(), e);
+        }
+    }
+
+    public T create(final IndexSettings indexSettings, final Environment env, final String name, final Settings settings) {
+        return AccessController.doPrivileged((PrivilegedAction<T>) () -> {
+            final long startTime = System.nanoTime();
+            try {
+                final T instance = delegateClass.cast(constructor.invokeExact(indexSettings, env, name, settings));
+                createdInstances.increment();
+                return instance;
+            } catch (final Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new FesenException("Failed to load " + delegateClass.getName(), t);
+            } finally {
+                constructionTime.add(System.nanoTime() - startTime);
+            }
+        });
+    }
+
+    public Class<? extends T> getDelegateClass() {
+        return delegateClass;
+    }
+
+    /**
+     * Returns the name of the plugin whose classloader defined the delegate class.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public long getCreatedInstances() {
+        return createdInstances.sum();
+    }
+
+    public long getConstructionTimeInNanos() {
+        return constructionTime.sum();
+    }
+}
@@ -1,33 +1,156 @@
 package org.codelibs.fesen.fess.service;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.AccessController;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.Accountable;
 import org.codelibs.fesen.FesenException;
+import org.codelibs.fesen.cluster.ClusterChangedEvent;
+import org.codelibs.fesen.cluster.ClusterStateListener;
+import org.codelibs.fesen.cluster.metadata.IndexMetadata;
+import org.codelibs.fesen.cluster.routing.RoutingNode;
+import org.codelibs.fesen.cluster.service.ClusterService;
 import org.codelibs.fesen.common.component.AbstractLifecycleComponent;
+import org.codelibs.fesen.common.hash.MessageDigests;
 import org.codelibs.fesen.common.inject.Inject;
 import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.core.Tuple;
+import org.codelibs.fesen.core.internal.io.IOUtils;
+import org.codelibs.fesen.env.Environment;
+import org.codelibs.fesen.env.NodeEnvironment;
 import org.codelibs.fesen.fess.FessAnalysisPlugin;
+import org.codelibs.fesen.fess.analysis.AnalysisMetrics;
+import org.codelibs.fesen.fess.analysis.TokenCache;
+import org.codelibs.fesen.fess.analysis.TokenizerPool;
+import org.codelibs.fesen.fess.ingest.FessAnalyzeProcessor;
+import org.codelibs.fesen.gateway.GatewayService;
+import org.codelibs.fesen.index.Index;
+import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.plugins.Plugin;
 import org.codelibs.fesen.plugins.PluginInfo;
 import org.codelibs.fesen.plugins.PluginsService;
+import org.codelibs.fesen.threadpool.ThreadPool;
 
-public class FessAnalysisService extends AbstractLifecycleComponent {
+public class FessAnalysisService extends AbstractLifecycleComponent implements ClusterStateListener {
     private static final Logger logger = LogManager.getLogger(FessAnalysisService.class);
 
+    private static final String STRICT = "strict";
+
+    private static final String LAZY = "lazy";
+
+    private static final String USER_DICTIONARY = "user_dictionary";
+
+    private static final String USER_DICTIONARY_RULES = "user_dictionary_rules";
+
+    private static final String INSTRUMENT = "instrument";
+
+    private static final String TOKEN_CACHE_SIZE = "token_cache_size";
+
+    private static final String TOKEN_CACHE_MAX_INPUT_LENGTH = "token_cache_max_input_length";
+
+    private static final int DEFAULT_TOKEN_CACHE_MAX_INPUT_LENGTH = 32;
+
+    private static final String TOKENIZER_POOL_SIZE = "tokenizer_pool_size";
+
+    private static final String CHUNK_SIZE = "chunk_size";
+
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final String RELOAD_INTERVAL = "reload_interval";
+
+    private static final TimeValue DEFAULT_RELOAD_INTERVAL = TimeValue.timeValueMinutes(1);
+
+    // long enough that the delegate never reloads by itself
+    private static final String DELEGATE_RELOAD_INTERVAL = "36500d";
+
     private final PluginsService pluginsService;
 
+    private final FessAnalysisPlugin.PluginComponent pluginComponent;
+
+    private final ClusterService clusterService;
+
+    private final NodeEnvironment nodeEnvironment;
+
+    private final Settings settings;
+
+    private final Environment environment;
+
+    private AnalysisWarmer analysisWarmer;
+
+    private AnalysisManifest analysisManifest;
+
     private List<Tuple<PluginInfo, Plugin>> plugins;
 
+    private final Map<String, Optional<Class<?>>> classCache = new ConcurrentHashMap<>();
+
+    private final Map<String, Optional<DelegateProvider<?>>> providerCache = new ConcurrentHashMap<>();
+
+    private final Map<String, SharedInstance> sharedInstances = new ConcurrentHashMap<>();
+
+    private final Map<Path, UserDictionarySource> userDictionarySources = new ConcurrentHashMap<>();
+
+    private final Map<String, Index> fallbackComponents = new ConcurrentHashMap<>();
+
+    private final Map<ComponentType, LongAdder> fallbackStreams = new EnumMap<>(ComponentType.class);
+
+    private final Map<ComponentType, Map<String, AnalysisMetrics>> analysisMetrics = new EnumMap<>(ComponentType.class);
+
+    private final Map<Index, Map<String, TokenCache>> tokenCaches = new ConcurrentHashMap<>();
+
+    private final Map<Index, Map<String, List<TokenizerPool>>> tokenizerPools = new ConcurrentHashMap<>();
+
+    private final Set<String> reportedFallbacks = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder classCacheHits = new LongAdder();
+
+    private final LongAdder classCacheMisses = new LongAdder();
+
+    private final LongAdder classResolutionTime = new LongAdder();
+
     @Inject
-    public FessAnalysisService(final Settings settings, final PluginsService pluginsService,
+    public FessAnalysisService(final Settings settings, final PluginsService pluginsService, final ClusterService clusterService,
+            final NodeEnvironment nodeEnvironment, final Environment environment,
             final FessAnalysisPlugin.PluginComponent pluginComponent) {
+        this.settings = settings;
+        this.environment = environment;
         this.pluginsService = pluginsService;
+        this.clusterService = clusterService;
+        this.nodeEnvironment = nodeEnvironment;
+        this.pluginComponent = pluginComponent;
+        for (final ComponentType type : ComponentType.values()) {
+            fallbackStreams.put(type, new LongAdder());
+            analysisMetrics.put(type, new ConcurrentHashMap<>());
+        }
         pluginComponent.setFessAnalysisService(this);
     }
 
@@ -35,7 +158,32 @@ public class FessAnalysisService extends AbstractLifecycleComponent {
     protected void doStart() throws FesenException {
         logger.debug("Starting FessAnalysisService");
 
-        plugins = loadPlugins();
+        final List<Tuple<PluginInfo, Plugin>> loadedPlugins = loadPlugins();
+        if (plugins != loadedPlugins) {
+            // resolved classes depend on the plugin set
+            classCache.clear();
+            providerCache.clear();
+        }
+        plugins = loadedPlugins;
+
+        if (nodeEnvironment.hasNodeFile()) {
+            final Path fessPath = nodeEnvironment.nodeDataPaths()[0].resolve("fess");
+            final AnalysisManifest manifest = new AnalysisManifest(fessPath.resolve(AnalysisManifest.FILE_NAME));
+            try {
+                manifest.load(nodeEnvironment.availableIndexFolders());
+            } catch (final IOException e) {
+                logger.warn("Failed to load " + fessPath.resolve(AnalysisManifest.FILE_NAME), e);
+            }
+            analysisManifest = manifest;
+        }
+
+        if (AnalysisWarmer.WARMUP_ENABLED_SETTING.get(settings)) {
+            plugins.stream().map(Tuple::v2).filter(FessAnalysisPlugin.class::isInstance).findFirst().ifPresent(plugin -> {
+                analysisWarmer = new AnalysisWarmer(settings, environment, this, (FessAnalysisPlugin) plugin);
+            });
+        }
+
+        clusterService.addListener(this);
     }
 
     @SuppressWarnings("unchecked")
@@ -54,14 +202,447 @@ public class FessAnalysisService extends AbstractLifecycleComponent {
     @Override
     protected void doStop() throws FesenException {
         logger.debug("Stopping FessAnalysisService");
+
+        clusterService.removeListener(this);
+        storeManifest();
+    }
+
+    private void storeManifest() {
+        if (analysisManifest != null) {
+            try {
+                analysisManifest.store();
+            } catch (final IOException e) {
+                logger.warn("Failed to store the analysis manifest.", e);
+            }
+        }
     }
 
     @Override
     protected void doClose() throws FesenException {
         logger.debug("Closing FessAnalysisService");
+        if (logger.isDebugEnabled()) {
+            logger.debug("Class cache: size={}, hits={}, misses={}, resolutionTime={}ns", classCache.size(), getClassCacheHits(),
+                    getClassCacheMisses(), getClassResolutionTimeInNanos());
+        }
+        providerCache.clear();
+        classCache.clear();
+
+        final List<SharedInstance> instances = new ArrayList<>(sharedInstances.values());
+        sharedInstances.clear();
+        instances.forEach(SharedInstance::close);
+    }
+
+    @Override
+    public void clusterChanged(final ClusterChangedEvent event) {
+        // indices validated or deleted elsewhere never reach afterIndexRemoved on this node
+        for (final Index index : event.indicesDeleted()) {
+            releaseSharedInstances(index);
+            if (analysisManifest != null) {
+                analysisManifest.removeIndex(index.getUUID());
+            }
+        }
+        final ThreadPool threadPool = pluginComponent.getThreadPool();
+        if (analysisManifest != null && analysisManifest.isDirty() && threadPool != null) {
+            threadPool.generic().execute(this::storeManifest);
+        }
+        if (analysisWarmer != null && threadPool != null
+                && !event.state().blocks().hasGlobalBlock(GatewayService.STATE_NOT_RECOVERED_BLOCK)) {
+            analysisWarmer.start(event.state(), threadPool);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> DelegateProvider<T> loadProvider(final String className, final Class<T> type) {
+        final DelegateProvider<?> provider = providerCache.computeIfAbsent(className, name -> {
+            final Class<?> delegateClass = loadClass(name);
+            if (delegateClass == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new DelegateProvider<>(delegateClass, findSource(delegateClass)));
+        }).orElse(null);
+        if (provider == null) {
+            return null;
+        }
+        if (!type.isAssignableFrom(provider.getDelegateClass())) {
+            throw new FesenException(className + " is not " + type.getName());
+        }
+        return (DelegateProvider<T>) provider;
+    }
+
+    /**
+     * Returns a holder that builds the delegate on the first use, once even if threads race for it.
+     * Factories defer the use into their streams until the first non-empty input, so that analyzers
+     * no field uses do not load their dictionaries. With lazy: false, it is built now.
+     */
+    public <T> LazyInstance<T> createLazyInstance(final Settings settings, final Supplier<T> builder) {
+        final LazyInstance<T> instance = new LazyInstance<>(builder);
+        if (!settings.getAsBoolean(LAZY, true)) {
+            instance.get();
+        }
+        return instance;
+    }
+
+    public <T> T createSharedInstance(final DelegateProvider<T> provider, final IndexSettings indexSettings, final Environment env,
+            final String name, final Settings settings) {
+        return createSharedInstance(provider, indexSettings, env, name, settings, null);
+    }
+
+    /**
+     * Returns a delegate instance shared by indices with the same component name and settings.
+     * The digest identifies external resources, such as dictionary contents, that the settings only point to.
+     */
+    public <T> T createSharedInstance(final DelegateProvider<T> provider, final IndexSettings indexSettings, final Environment env,
+            final String name, final Settings settings, final String digest) {
+        if (isTemporary(indexSettings)) {
+            return provider.create(indexSettings, env, name, settings);
+        }
+        final String key = provider.getDelegateClass().getName() + "[" + name + "]@" + indexSettings.getIndexVersionCreated().id
+                + settings.toString() + (digest != null ? "#" + digest : "");
+        final Object instance = acquireSharedInstance(key, indexSettings.getIndex(),
+                () -> provider.create(indexSettings, env, name, settings));
+        recordConfiguration(key, provider, indexSettings, env, settings);
+        return provider.getDelegateClass().cast(instance);
+    }
+
+    /**
+     * Returns an instance shared by indices with the same key, which is released with the last of them.
+     */
+    public <T> T getSharedInstance(final String key, final IndexSettings indexSettings, final Class<T> type, final Supplier<T> supplier) {
+        if (isTemporary(indexSettings)) {
+            return supplier.get();
+        }
+        return type.cast(acquireSharedInstance(key, indexSettings.getIndex(), supplier::get));
+    }
+
+    /**
+     * Returns a delegate shared by indices with the same settings, which is rebuilt in the background
+     * when the watched file changes. The delegate's own reload is disabled so that create() does not block.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ReloadableDelegate<T> createReloadableInstance(final DelegateProvider<T> provider, final IndexSettings indexSettings,
+            final Environment env, final String name, final Settings settings, final Path watchedFile) {
+        final Settings delegateSettings = Settings.builder().put(settings).put(RELOAD_INTERVAL, DELEGATE_RELOAD_INTERVAL).build();
+        final Supplier<T> builder = () -> provider.create(indexSettings, env, name, delegateSettings);
+        final Supplier<String> versionSupplier = () -> watchedFile != null ? getUserDictionaryDigest(watchedFile) : null;
+        final String delegateName = provider.getDelegateClass().getName() + "[" + indexSettings.getIndex().getName() + "/" + name + "]";
+        if (isTemporary(indexSettings)) {
+            return new ReloadableDelegate<>(delegateName, builder, versionSupplier);
+        }
+        final String key = "reloadable:" + provider.getDelegateClass().getName() + "[" + name + "]@"
+                + indexSettings.getIndexVersionCreated().id + settings.toString();
+        recordConfiguration(key, provider, indexSettings, env, settings);
+        return (ReloadableDelegate<T>) acquireSharedInstance(key, indexSettings.getIndex(), () -> {
+            final ReloadableDelegate<T> delegate = new ReloadableDelegate<>(delegateName, builder, versionSupplier);
+            final ThreadPool threadPool = pluginComponent.getThreadPool();
+            if (watchedFile != null && threadPool != null) {
+                final TimeValue interval = settings.getAsTime(RELOAD_INTERVAL, DEFAULT_RELOAD_INTERVAL);
+                if (interval.millis() > 0) {
+                    delegate.setCancellable(threadPool.scheduleWithFixedDelay(delegate::reloadIfChanged, interval,
+                            FessAnalysisPlugin.RELOAD_THREAD_POOL_NAME));
+                }
+            }
+            return delegate;
+        });
+    }
+
+    private void recordConfiguration(final String key, final DelegateProvider<?> provider, final IndexSettings indexSettings,
+            final Environment env, final Settings settings) {
+        if (analysisManifest != null) {
+            final String userDictionary = settings.get(USER_DICTIONARY);
+            analysisManifest.add(key, provider.getDelegateClass().getName(),
+                    userDictionary != null ? env.configFile().resolve(userDictionary) : null, indexSettings.getIndex().getUUID());
+        }
+    }
+
+    private boolean isTemporary(final IndexSettings indexSettings) {
+        // an analyzer without an index, such as _analyze with inline components
+        return IndexMetadata.INDEX_UUID_NA_VALUE.equals(indexSettings.getIndex().getUUID());
+    }
+
+    private Object acquireSharedInstance(final String key, final Index owner, final Supplier<Object> supplier) {
+        // only the holder is registered under the map lock, and the instance is built by the holder
+        final SharedInstance sharedInstance = sharedInstances.compute(key, (k, v) -> {
+            final SharedInstance instance = v != null ? v : new SharedInstance(supplier);
+            instance.owners.add(owner);
+            return instance;
+        });
+        final Object instance;
+        try {
+            instance = sharedInstance.get();
+        } catch (final RuntimeException e) {
+            // the owner fails to be created, so nothing else releases it
+            releaseSharedInstance(key, sharedInstance, owner);
+            throw e;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Shared {} for {}", instance.getClass().getName(), owner);
+        }
+        return instance;
+    }
+
+    private void releaseSharedInstance(final String key, final SharedInstance sharedInstance, final Index owner) {
+        final List<SharedInstance> released = new ArrayList<>(1);
+        sharedInstances.computeIfPresent(key, (k, v) -> {
+            if (v == sharedInstance && v.owners.remove(owner) && v.owners.isEmpty()) {
+                released.add(v);
+                return null;
+            }
+            return v;
+        });
+        released.forEach(SharedInstance::close);
+    }
+
+    public List<ReloadableDelegate<?>> getReloadableInstances() {
+        final List<ReloadableDelegate<?>> list = new ArrayList<>();
+        for (final SharedInstance sharedInstance : sharedInstances.values()) {
+            final Object instance = sharedInstance.peek();
+            if (instance instanceof ReloadableDelegate) {
+                list.add((ReloadableDelegate<?>) instance);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the SHA-256 of the user dictionary, which keys the instances built from it, or null if it cannot be read.
+     * The digest is kept while the file keeps its size and modification time, so that opening another index
+     * with the same dictionary does not read it again.
+     */
+    public String getUserDictionaryDigest(final Path source) {
+        if (!Files.isRegularFile(source)) {
+            return null;
+        }
+        try {
+            final long lastModified = Files.getLastModifiedTime(source).toMillis();
+            final long size = Files.size(source);
+            final UserDictionarySource cached = userDictionarySources.get(source);
+            if (cached != null && cached.lastModified == lastModified && cached.size == size) {
+                return cached.checksum;
+            }
+            final MessageDigest digest = MessageDigests.sha256();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+                final byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // read all
+                }
+            }
+            final String checksum = MessageDigests.toHexString(digest.digest());
+            userDictionarySources.put(source, new UserDictionarySource(lastModified, size, checksum));
+            return checksum;
+        } catch (final IOException e) {
+            logger.warn("Failed to read " + source, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the entries of the user dictionary set as user_dictionary_rules, or as a user_dictionary file,
+     * without comments and blank lines.
+     */
+    public List<String> getUserDictionaryRules(final Environment env, final Settings settings) {
+        final String userDictionary = settings.get(USER_DICTIONARY);
+        final List<String> rules = settings.getAsList(USER_DICTIONARY_RULES);
+        if (userDictionary != null && !rules.isEmpty()) {
+            throw new IllegalArgumentException("[" + USER_DICTIONARY + "] cannot be used with [" + USER_DICTIONARY_RULES + "].");
+        }
+        final List<String> lines;
+        if (userDictionary == null) {
+            lines = rules;
+        } else {
+            final Path path = env.configFile().resolve(userDictionary);
+            try {
+                lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            } catch (final IOException e) {
+                throw new FesenException("Failed to load " + path, e);
+            }
+        }
+        return lines.stream().filter(line -> !line.isBlank() && !line.startsWith("#")).collect(Collectors.toList());
+    }
+
+    /**
+     * Called by a factory whose delegates are all missing.
+     * Fails when the component sets strict, and otherwise counts the component as running in fallback.
+     */
+    public void onDelegateNotFound(final ComponentType type, final IndexSettings indexSettings, final String name, final Settings settings,
+            final String... factoryClasses) {
+        final String classNames = String.join(", ", factoryClasses);
+        if (settings.getAsBoolean(STRICT, false)) {
+            throw new FesenException("[" + name + "] " + classNames + " is not found. Install a plugin providing it or unset " + STRICT
+                    + " to allow a fallback.");
+        }
+        if (!isTemporary(indexSettings)) {
+            fallbackComponents.put(type.getName() + ":" + indexSettings.getIndex().getUUID() + ":" + name, indexSettings.getIndex());
+        }
+        if (reportedFallbacks.add(type.getName() + ":" + classNames)) {
+            logger.warn("{} is not found. {} [{}] in {} falls back to {}.", classNames, type.getName(), name, indexSettings.getIndex(),
+                    type == ComponentType.TOKENIZER ? "an empty tokenizer" : "a pass-through");
+        }
+    }
+
+    /**
+     * Called when a factory in fallback creates a tokenizer, a token filter or a reader.
+     */
+    public void onFallback(final ComponentType type) {
+        fallbackStreams.get(type).increment();
+    }
+
+    public long getFallbackComponentCount(final ComponentType type) {
+        final String prefix = type.getName() + ":";
+        return fallbackComponents.keySet().stream().filter(k -> k.startsWith(prefix)).count();
+    }
+
+    public long getFallbackStreamCount(final ComponentType type) {
+        return fallbackStreams.get(type).sum();
+    }
+
+    /**
+     * Returns the metrics for the component if it sets instrument, or null.
+     * Components with the same name share metrics across indices.
+     */
+    public AnalysisMetrics getAnalysisMetrics(final ComponentType type, final String name, final Settings settings) {
+        if (!settings.getAsBoolean(INSTRUMENT, false)) {
+            return null;
+        }
+        return analysisMetrics.get(type).computeIfAbsent(name, k -> new AnalysisMetrics());
+    }
+
+    public Map<String, AnalysisMetrics> getAnalysisMetrics(final ComponentType type) {
+        return Collections.unmodifiableMap(analysisMetrics.get(type));
+    }
+
+    /**
+     * Returns a token cache for the tokenizer if it sets token_cache_size, or null.
+     */
+    public TokenCache getTokenCache(final IndexSettings indexSettings, final String name, final Settings settings) {
+        final int size = settings.getAsInt(TOKEN_CACHE_SIZE, 0);
+        if (size <= 0) {
+            return null;
+        }
+        final int maxInputLength = settings.getAsInt(TOKEN_CACHE_MAX_INPUT_LENGTH, DEFAULT_TOKEN_CACHE_MAX_INPUT_LENGTH);
+        if (maxInputLength <= 0) {
+            throw new IllegalArgumentException("[" + TOKEN_CACHE_MAX_INPUT_LENGTH + "] must be positive: " + maxInputLength);
+        }
+        final TokenCache tokenCache = new TokenCache(size, maxInputLength);
+        if (!isTemporary(indexSettings)) {
+            tokenCaches.computeIfAbsent(indexSettings.getIndex(), k -> new ConcurrentHashMap<>()).put(name, tokenCache);
+        }
+        return tokenCache;
+    }
+
+    /**
+     * Returns a pool of the supplied tokenizers if the tokenizer sets tokenizer_pool_size, or null.
+     * The pools of an index are closed when the index is released, not when its factory is created again,
+     * because the analyzers of the previous factory may still be in use.
+     */
+    public TokenizerPool getTokenizerPool(final IndexSettings indexSettings, final String name, final Settings settings,
+            final Supplier<Tokenizer> supplier) {
+        final int size = settings.getAsInt(TOKENIZER_POOL_SIZE, 0);
+        if (size <= 0) {
+            return null;
+        }
+        final TokenizerPool tokenizerPool = new TokenizerPool(supplier, size);
+        if (!isTemporary(indexSettings)) {
+            tokenizerPools.computeIfAbsent(indexSettings.getIndex(), k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(name, k -> new CopyOnWriteArrayList<>()).add(tokenizerPool);
+        }
+        return tokenizerPool;
+    }
+
+    /**
+     * Returns the window size for the tokenizer if it sets chunk_size, or 0.
+     */
+    public int getChunkSize(final String name, final Settings settings) {
+        final int chunkSize = settings.getAsInt(CHUNK_SIZE, 0);
+        if (chunkSize > 0 && chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("[" + name + "] " + CHUNK_SIZE + " must be at least " + MIN_CHUNK_SIZE + ": " + chunkSize);
+        }
+        return Math.max(chunkSize, 0);
+    }
+
+    /**
+     * Returns the window size for a tokenizer that reads its whole input before tokenizing it.
+     * Such a tokenizer is always fed in windows, of 4096 chars unless it sets chunk_size, so that a large field
+     * is not copied into its buffer at once.
+     */
+    public int getBoundedChunkSize(final String name, final Settings settings) {
+        final int chunkSize = settings.getAsInt(CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("[" + name + "] " + CHUNK_SIZE + " must be at least " + MIN_CHUNK_SIZE + ": " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    public void releaseSharedInstances(final Index index) {
+        releaseSharedInstances(index, null);
+    }
+
+    /**
+     * Hands the instances acquired for each warm-up owner over to its index if the index has shards allocated to this node,
+     * and releases them otherwise. This runs on the cluster applier thread, which creates and removes the index services,
+     * so that an index service is not created or removed in between.
+     */
+    public void handOverSharedInstances(final Map<Index, Index> owners) {
+        clusterService.getClusterApplierService().runOnApplierThread("fess analysis warm-up", state -> {
+            final RoutingNode routingNode = state.getRoutingNodes().node(state.nodes().getLocalNodeId());
+            owners.forEach((owner, index) -> releaseSharedInstances(owner,
+                    routingNode != null && routingNode.numberOfOwningShardsForIndex(index) > 0 ? index : null));
+        }, (source, e) -> logger.warn("Failed to hand over the analysis components built by the warm-up.", e));
+    }
+
+    private void releaseSharedInstances(final Index index, final Index successor) {
+        fallbackComponents.values().removeIf(index::equals);
+        final Map<String, TokenCache> caches = tokenCaches.remove(index);
+        if (caches != null) {
+            caches.values().forEach(TokenCache::clear);
+        }
+        final Map<String, List<TokenizerPool>> pools = tokenizerPools.remove(index);
+        if (pools != null) {
+            pools.values().forEach(list -> list.forEach(TokenizerPool::close));
+        }
+        final List<SharedInstance> released = new ArrayList<>();
+        for (final String key : sharedInstances.keySet()) {
+            sharedInstances.computeIfPresent(key, (k, v) -> {
+                if (v.owners.remove(index)) {
+                    if (successor != null) {
+                        v.owners.add(successor);
+                    } else if (v.owners.isEmpty()) {
+                        released.add(v);
+                        return null;
+                    }
+                }
+                return v;
+            });
+        }
+        if (!released.isEmpty()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Released {} shared instances for {}", released.size(), index);
+            }
+            released.forEach(SharedInstance::close);
+        }
+    }
+
+    public int getSharedInstanceCount() {
+        return sharedInstances.size();
     }
 
     public Class<?> loadClass(final String className) {
+        final Optional<Class<?>> cached = classCache.get(className);
+        if (cached != null) {
+            classCacheHits.increment();
+            return cached.orElse(null);
+        }
+        return classCache.computeIfAbsent(className, name -> {
+            classCacheMisses.increment();
+            final long startTime = System.nanoTime();
+            try {
+                return Optional.ofNullable(resolveClass(name));
+            } finally {
+                classResolutionTime.add(System.nanoTime() - startTime);
+            }
+        }).orElse(null);
+    }
+
+    private Class<?> resolveClass(final String className) {
         return AccessController.doPrivileged((PrivilegedAction<Class<?>>) () -> {
             for (final Tuple<PluginInfo, Plugin> p : plugins) {
                 final Plugin plugin = p.v2();
@@ -75,4 +656,241 @@ public class FessAnalysisService extends AbstractLifecycleComponent {
         });
     }
 
+    private String findSource(final Class<?> delegateClass) {
+        final ClassLoader classLoader = delegateClass.getClassLoader();
+        for (final Tuple<PluginInfo, Plugin> p : plugins) {
+            if (p.v2().getClass().getClassLoader() == classLoader) {
+                return p.v1().getName();
+            }
+        }
+        return String.valueOf(classLoader);
+    }
+
+    /**
+     * Returns a snapshot of delegates, dictionaries and analysis counters on this node.
+     */
+    public Map<String, Object> getStats() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+
+        final Map<String, Object> classCacheStats = new LinkedHashMap<>();
+        classCacheStats.put("size", classCache.size());
+        classCacheStats.put("hits", getClassCacheHits());
+        classCacheStats.put("misses", getClassCacheMisses());
+        classCacheStats.put("resolution_time_in_nanos", getClassResolutionTimeInNanos());
+        stats.put("class_cache", classCacheStats);
+
+        final Map<String, Object> delegates = new TreeMap<>();
+        providerCache.forEach((className, provider) -> {
+            final Map<String, Object> delegateStats = new LinkedHashMap<>();
+            if (provider.isPresent()) {
+                delegateStats.put("resolved", true);
+                delegateStats.put("source", provider.get().getSource());
+                delegateStats.put("created_instances", provider.get().getCreatedInstances());
+                delegateStats.put("construction_time_in_nanos", provider.get().getConstructionTimeInNanos());
+            } else {
+                delegateStats.put("resolved", false);
+            }
+            delegates.put(className, delegateStats);
+        });
+        stats.put("delegates", new LinkedHashMap<>(delegates));
+
+        final Map<String, Object> instances = new TreeMap<>();
+        long ramBytesUsed = 0;
+        for (final Map.Entry<String, SharedInstance> entry : sharedInstances.entrySet()) {
+            final SharedInstance sharedInstance = entry.getValue();
+            final Map<String, Object> instanceStats = new LinkedHashMap<>();
+            instanceStats.put("owners", sharedInstance.getOwnerCount());
+            final Object built = sharedInstance.peek();
+            instanceStats.put("built", built != null);
+            final Object instance = built instanceof ReloadableDelegate ? ((ReloadableDelegate<?>) built).get() : built;
+            if (instance instanceof Accountable) {
+                final long bytes = ((Accountable) instance).ramBytesUsed();
+                instanceStats.put("ram_bytes_used", bytes);
+                ramBytesUsed += bytes;
+            }
+            if (instance instanceof TokenCache) {
+                final TokenCache tokenCache = (TokenCache) instance;
+                instanceStats.put("count", tokenCache.getCount());
+                instanceStats.put("hits", tokenCache.getHits());
+                instanceStats.put("misses", tokenCache.getMisses());
+                instanceStats.put("evictions", tokenCache.getEvictions());
+            }
+            if (built instanceof ReloadableDelegate) {
+                final ReloadableDelegate<?> delegate = (ReloadableDelegate<?>) built;
+                instanceStats.put("reload_count", delegate.getReloadCount());
+                instanceStats.put("reload_failure_count", delegate.getFailureCount());
+                instanceStats.put("last_reload_time_in_nanos", delegate.getLastReloadTimeInNanos());
+                instanceStats.put("last_success_timestamp", delegate.getLastSuccessTimestamp());
+            }
+            instances.put(entry.getKey(), instanceStats);
+        }
+        final Map<String, Object> sharedInstanceStats = new LinkedHashMap<>();
+        sharedInstanceStats.put("count", instances.size());
+        sharedInstanceStats.put("ram_bytes_used", ramBytesUsed);
+        sharedInstanceStats.put("instances", new LinkedHashMap<>(instances));
+        stats.put("shared_instances", sharedInstanceStats);
+
+        final Map<String, Object> dictionaries = new TreeMap<>();
+        userDictionarySources.forEach((source, dictionary) -> {
+            final Map<String, Object> dictionaryStats = new LinkedHashMap<>();
+            dictionaryStats.put("size_in_bytes", dictionary.size);
+            dictionaryStats.put("checksum", dictionary.checksum);
+            dictionaries.put(source.toString(), dictionaryStats);
+        });
+        stats.put("user_dictionaries", new LinkedHashMap<>(dictionaries));
+
+        final Map<String, Object> caches = new TreeMap<>();
+        tokenCaches.forEach((index, indexCaches) -> indexCaches.forEach((name, tokenCache) -> {
+            final Map<String, Object> cacheStats = new LinkedHashMap<>();
+            final long hits = tokenCache.getHits();
+            final long misses = tokenCache.getMisses();
+            cacheStats.put("count", tokenCache.getCount());
+            cacheStats.put("hits", hits);
+            cacheStats.put("misses", misses);
+            cacheStats.put("evictions", tokenCache.getEvictions());
+            cacheStats.put("hit_rate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0d);
+            caches.put(index.getName() + "/" + name, cacheStats);
+        }));
+        stats.put("token_caches", new LinkedHashMap<>(caches));
+
+        final Map<String, Object> pools = new TreeMap<>();
+        tokenizerPools.forEach((index, indexPools) -> indexPools.forEach((name, list) -> {
+            if (list.isEmpty()) {
+                return;
+            }
+            final Map<String, Object> poolStats = new LinkedHashMap<>();
+            poolStats.put("max_size", list.get(list.size() - 1).getMaxSize());
+            poolStats.put("instances", list.size());
+            poolStats.put("created", list.stream().mapToLong(TokenizerPool::getCreated).sum());
+            poolStats.put("reused", list.stream().mapToLong(TokenizerPool::getReused).sum());
+            pools.put(index.getName() + "/" + name, poolStats);
+        }));
+        stats.put("tokenizer_pools", new LinkedHashMap<>(pools));
+
+        if (analysisWarmer != null) {
+            stats.put("warmup", analysisWarmer.getStats());
+        }
+
+        if (analysisManifest != null) {
+            stats.put("manifest", analysisManifest.getStats());
+        }
+
+        final FessAnalyzeProcessor.Factory analyzeProcessorFactory = pluginComponent.getAnalyzeProcessorFactory();
+        if (analyzeProcessorFactory != null) {
+            stats.put("analyze_processor", analyzeProcessorFactory.getStats());
+        }
+
+        final Map<String, Object> components = new LinkedHashMap<>();
+        for (final ComponentType type : ComponentType.values()) {
+            final Map<String, Object> typeStats = new LinkedHashMap<>();
+            final Map<String, Object> fallbackStats = new LinkedHashMap<>();
+            fallbackStats.put("components", getFallbackComponentCount(type));
+            fallbackStats.put("streams", getFallbackStreamCount(type));
+            typeStats.put("fallback", fallbackStats);
+            final Map<String, Object> metricsStats = new TreeMap<>();
+            analysisMetrics.get(type).forEach((name, metrics) -> metricsStats.put(name, toMap(metrics)));
+            typeStats.put("instrumented", new LinkedHashMap<>(metricsStats));
+            components.put(type.getName(), typeStats);
+        }
+        stats.put("components", components);
+        return stats;
+    }
+
+    private static Map<String, Object> toMap(final AnalysisMetrics metrics) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        final long timeInNanos = metrics.getTimeInNanos();
+        map.put("created_streams", metrics.getCreatedStreams());
+        map.put("active_inputs", metrics.getActiveInputs());
+        map.put("completed_inputs", metrics.getCompletedInputs());
+        map.put("input_chars", metrics.getInputChars());
+        map.put("tokens", metrics.getTokens());
+        map.put("time_in_nanos", timeInNanos);
+        map.put("chars_per_second", timeInNanos > 0 ? metrics.getInputChars() * 1000000000L / timeInNanos : 0L);
+        map.put("tokens_per_second", timeInNanos > 0 ? metrics.getTokens() * 1000000000L / timeInNanos : 0L);
+        map.put("latency_histogram_in_micros", metrics.getLatencyHistogram());
+        return map;
+    }
+
+    public long getClassCacheHits() {
+        return classCacheHits.sum();
+    }
+
+    public long getClassCacheMisses() {
+        return classCacheMisses.sum();
+    }
+
+    public long getClassResolutionTimeInNanos() {
+        return classResolutionTime.sum();
+    }
+
+    private static class UserDictionarySource {
+        private final long lastModified;
+
+        private final long size;
+
+        private final String checksum;
+
+        UserDictionarySource(final long lastModified, final long size, final String checksum) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+
+    private static class SharedInstance {
+        private final Supplier<Object> builder;
+
+        private volatile Object instance;
+
+        // guarded by this
+        private boolean closed;
+
+        // guarded by the compute lock of sharedInstances
+        private final Set<Index> owners = new HashSet<>();
+
+        SharedInstance(final Supplier<Object> builder) {
+            this.builder = builder;
+        }
+
+        /**
+         * Builds the instance once, holding the lock of this key only. A failed build is retried by the next caller.
+         */
+        Object get() {
+            Object value = instance;
+            if (value == null) {
+                synchronized (this) {
+                    value = instance;
+                    if (value == null) {
+                        if (closed) {
+                            throw new IllegalStateException("The shared instance was released.");
+                        }
+                        value = builder.get();
+                        instance = value;
+                    }
+                }
+            }
+            return value;
+        }
+
+        Object peek() {
+            return instance;
+        }
+
+        int getOwnerCount() {
+            // a racy read is fine for stats
+            return owners.size();
+        }
+
+        void close() {
+            final Object value;
+            synchronized (this) {
+                // waits for a build in progress
+                closed = true;
+                value = instance;
+            }
+            if (value instanceof Closeable) {
+                IOUtils.closeWhileHandlingException((Closeable) value);
+            }
+        }
+    }
 }
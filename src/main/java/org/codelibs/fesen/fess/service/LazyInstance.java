@@ -0,0 +1,39 @@
+package org.codelibs.fesen.fess.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Builds an instance on the first {@link #get()}, once even if threads race for it.
+ * A failed build is retried by the next caller.
+ */
+public class LazyInstance<T> {
+
+    private final Supplier<T> builder;
+
+    private volatile T instance;
+
+    LazyInstance(final Supplier<T> builder) {
+        this.builder = builder;
+    }
+
+    public T get() {
+        T value = instance;
+        if (value == null) {
+            synchronized (this) {
+                value = instance;
+                if (value == null) {
+                    value = builder.get();
+                    instance = value;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if the instance was built, so that streams can use it without deferring.
+     */
+    public boolean isBuilt() {
+        return instance != null;
+    }
+}
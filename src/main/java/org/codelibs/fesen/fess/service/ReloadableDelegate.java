@@ -0,0 +1,107 @@
+package org.codelibs.fesen.fess.service;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fesen.threadpool.Scheduler.Cancellable;
+
+/**
+ * Holds a delegate that is rebuilt in the background when its resource changes.
+ * A new delegate is built aside and published with an atomic swap, so {@link #get()} never waits for a reload.
+ */
+public class ReloadableDelegate<T> implements Closeable {
+    private static final Logger logger = LogManager.getLogger(ReloadableDelegate.class);
+
+    private final String name;
+
+    private final Supplier<T> builder;
+
+    private final Supplier<String> versionSupplier;
+
+    private final AtomicReference<T> current = new AtomicReference<>();
+
+    private volatile String version;
+
+    private volatile Cancellable cancellable;
+
+    private final LongAdder reloadCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private volatile long lastReloadTimeInNanos;
+
+    private volatile long lastSuccessTimestamp;
+
+    ReloadableDelegate(final String name, final Supplier<T> builder, final Supplier<String> versionSupplier) {
+        this.name = name;
+        this.builder = builder;
+        this.versionSupplier = versionSupplier;
+        version = versionSupplier.get();
+        current.set(builder.get());
+        lastSuccessTimestamp = System.currentTimeMillis();
+    }
+
+    public T get() {
+        return current.get();
+    }
+
+    void setCancellable(final Cancellable cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    void reloadIfChanged() {
+        final String newVersion = versionSupplier.get();
+        if (newVersion == null || Objects.equals(version, newVersion)) {
+            return;
+        }
+        final long startTime = System.nanoTime();
+        try {
+            final T delegate = builder.get();
+            current.set(delegate);
+            version = newVersion;
+            lastSuccessTimestamp = System.currentTimeMillis();
+            reloadCount.increment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Reloaded {} in {}ns", name, System.nanoTime() - startTime);
+            }
+        } catch (final Exception e) {
+            failureCount.increment();
+            logger.warn("Failed to reload " + name, e);
+        } finally {
+            lastReloadTimeInNanos = System.nanoTime() - startTime;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getReloadCount() {
+        return reloadCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public long getLastReloadTimeInNanos() {
+        return lastReloadTimeInNanos;
+    }
+
+    public long getLastSuccessTimestamp() {
+        return lastSuccessTimestamp;
+    }
+
+    @Override
+    public void close() {
+        final Cancellable c = cancellable;
+        if (c != null) {
+            c.cancel();
+        }
+    }
+}
@@ -2,14 +2,19 @@ package org.codelibs.fesen.fess;
 
 import static org.codelibs.fesen.runner.FesenRunner.newConfigs;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 import java.util.Map;
 
 import org.codelibs.curl.CurlResponse;
+import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.action.DocWriteResponse.Result;
 import org.codelibs.fesen.action.index.IndexResponse;
 import org.codelibs.fesen.action.search.SearchResponse;
+import org.codelibs.fesen.common.bytes.BytesArray;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.common.xcontent.XContentFactory;
@@ -40,6 +45,10 @@ public class FessAnalysisPluginTest {
             settingsBuilder.put("http.cors.enabled", true);
             settingsBuilder.put("http.cors.allow-origin", "*");
             settingsBuilder.put("discovery.type", "single-node");
+            settingsBuilder.put("fess.analysis.warmup.enabled", true);
+            settingsBuilder.putList("node.roles", "master", "data", "ingest");
+            settingsBuilder.put("fess.analysis.batch.max_texts", 100);
+            settingsBuilder.put("fess.analysis.batch.max_total_token_count", 300);
             // settingsBuilder.putList("discovery.seed_hosts", "127.0.0.1:9301");
             // settingsBuilder.putList("cluster.initial_master_nodes", "127.0.0.1:9301");
         }).build(newConfigs().clusterName(clusterName).numOfNode(numOfNode).pluginTypes("org.codelibs.fesen.fess.FessAnalysisPlugin"));
@@ -64,7 +73,8 @@ public class FessAnalysisPluginTest {
                 + "\"ja_user_dict\":{\"type\":\"fess_japanese_tokenizer\",\"mode\":\"extended\",\"user_dictionary\":\"userdict_ja.txt\"}"
                 + "},"//
                 + "\"analyzer\":{"
-                + "\"ja_analyzer\":{\"type\":\"custom\",\"tokenizer\":\"ja_user_dict\",\"filter\":[\"fess_japanese_stemmer\"]}" + "}"//
+                + "\"ja_analyzer\":{\"type\":\"custom\",\"tokenizer\":\"ja_user_dict\",\"filter\":[\"fess_japanese_stemmer\"]},"
+                + "\"ja_fused\":{\"type\":\"fess_japanese_analyzer\"}" + "}"//
                 + "}}}";
         runner.createIndex(index, Settings.builder().loadFromSource(indexSettings, XContentType.JSON).build());
 
@@ -103,6 +113,241 @@ public class FessAnalysisPluginTest {
             assertEquals(0, tokens.size());
         }
 
+        try (CurlResponse response = FesenCurl.post(node, "/" + index + "/_analyze").header("Content-Type", "application/json")
+                .body("{\"text\":\"東京スカイツリー\",\"analyzer\":\"ja_fused\"}").execute()) {
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> tokens = (List<Map<String, Object>>) response.getContent(FesenCurl.jsonParser()).get("tokens");
+            assertEquals(0, tokens.size());
+        }
+
+        try (CurlResponse response = FesenCurl.get(node, "/_fess/analysis/_stats").execute()) {
+            final Map<String, Object> content = response.getContent(FesenCurl.jsonParser());
+            @SuppressWarnings("unchecked")
+            final Map<String, Map<String, Object>> nodes = (Map<String, Map<String, Object>>) content.get("nodes");
+            assertEquals(numOfNode, nodes.size());
+            final Map<String, Object> nodeStats = nodes.values().iterator().next();
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> delegates = (Map<String, Object>) nodeStats.get("delegates");
+            assertTrue(delegates.toString(),
+                    delegates.containsKey("org.codelibs.fesen.extension.analysis.ReloadableKuromojiTokenizerFactory"));
+            @SuppressWarnings("unchecked")
+            final Map<String, Map<String, Map<String, Object>>> components =
+                    (Map<String, Map<String, Map<String, Object>>>) nodeStats.get("components");
+            assertTrue(((Number) components.get("tokenizer").get("fallback").get("components")).intValue() > 0);
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> warmup = (Map<String, Object>) nodeStats.get("warmup");
+            assertFalse(warmup.toString(), "failed".equals(warmup.get("status")));
+            assertTrue(nodeStats.toString(), nodeStats.containsKey("manifest"));
+        }
+    }
+
+    @Test
+    public void test_strict() throws Exception {
+
+        runner.ensureYellow();
+
+        final String indexSettings = "{\"index\":{\"analysis\":{" + "\"tokenizer\":{"//
+                + "\"ja_strict\":{\"type\":\"fess_japanese_tokenizer\",\"strict\":true}" + "},"//
+                + "\"analyzer\":{" + "\"ja_analyzer\":{\"type\":\"custom\",\"tokenizer\":\"ja_strict\"}" + "}"//
+                + "}}}";
+        try {
+            runner.client().admin().indices().prepareCreate("strict").setSettings(indexSettings, XContentType.JSON).execute().actionGet();
+            fail();
+        } catch (final FesenException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("ReloadableKuromojiTokenizerFactory is not found"));
+        }
+        assertFalse(runner.indexExists("strict"));
+    }
+
+    @Test
+    public void test_batch_analyze() throws Exception {
+
+        runner.ensureYellow();
+        final Node node = runner.node();
+
+        try (CurlResponse response = FesenCurl.post(node, "/_fess/analyze/_batch").header("Content-Type", "application/json")
+                .body(getBatchBody(100, "Fess Analysis ")).execute()) {
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> results =
+                    (List<Map<String, Object>>) response.getContent(FesenCurl.jsonParser()).get("results");
+            assertEquals(100, results.size());
+            for (int i = 0; i < 100; i++) {
+                @SuppressWarnings("unchecked")
+                final List<Map<String, Object>> tokens = (List<Map<String, Object>>) results.get(i).get("tokens");
+                assertEquals(3, tokens.size());
+                assertEquals("fess", tokens.get(0).get("token"));
+                assertEquals(String.valueOf(i), tokens.get(2).get("token"));
+                assertEquals(2, ((Number) tokens.get(2).get("position")).intValue());
+            }
+        }
+
+        // over fess.analysis.batch.max_texts
+        try (CurlResponse response = FesenCurl.post(node, "/_fess/analyze/_batch").header("Content-Type", "application/json")
+                .body(getBatchBody(101, "Fess Analysis ")).execute()) {
+            assertEquals(400, response.getHttpStatusCode());
+            // rejected before the request is routed to a shard
+            assertTrue(response.getContentAsString(), response.getContentAsString().contains("action_request_validation_exception"));
+        }
+
+        // over fess.analysis.batch.max_total_token_count
+        try (CurlResponse response = FesenCurl.post(node, "/_fess/analyze/_batch").header("Content-Type", "application/json")
+                .body(getBatchBody(100, "Fess Analysis Batch ")).execute()) {
+            assertFalse(response.getContentAsString(), response.getHttpStatusCode() == 200);
+            assertTrue(response.getContentAsString(), response.getContentAsString().contains("max_total_token_count"));
+        }
+    }
+
+    private static String getBatchBody(final int size, final String prefix) {
+        final StringBuilder body = new StringBuilder();
+        body.append("{\"analyzer\":\"standard\",\"text\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append('"').append(prefix).append(i).append('"');
+        }
+        body.append("]}");
+        return body.toString();
+    }
+
+    @Test
+    public void test_builtin_engines() throws Exception {
+
+        runner.ensureYellow();
+        final Node node = runner.node();
+
+        assertTokens(node, "{\"tokenizer\":\"fess_simplified_chinese_tokenizer\",\"text\":\"我是中国人\"}", "我", "是", "中国", "人");
+        // passes through without STConvert unless the builtin engine is set
+        assertTokens(node, "{\"tokenizer\":\"keyword\",\"char_filter\":[\"fess_traditional_chinese_convert\"],\"text\":\"台湾\"}",
+                "台湾");
+        assertTokens(node, "{\"tokenizer\":\"keyword\",\"char_filter\":[{\"type\":\"fess_traditional_chinese_convert\",\"engine\":\"builtin\"}],"
+                + "\"text\":\"台湾\"}", "臺灣");
+        // strict is accepted by every fess_* component
+        assertTokens(node, "{\"tokenizer\":\"keyword\",\"char_filter\":[{\"type\":\"fess_traditional_chinese_convert\",\"engine\":\"builtin\","
+                + "\"strict\":true}],\"text\":\"台湾\"}", "臺灣");
+        try (CurlResponse response = FesenCurl.post(node, "/_analyze").header("Content-Type", "application/json")
+                .body("{\"tokenizer\":\"keyword\",\"char_filter\":[{\"type\":\"fess_traditional_chinese_convert\",\"engine\":\"builtin\","
+                        + "\"keep_both\":true}],\"text\":\"台湾\"}")
+                .execute()) {
+            assertEquals(400, response.getHttpStatusCode());
+        }
+        assertTokens(node, "{\"tokenizer\":\"fess_korean_tokenizer\",\"text\":\"가계부채 대책을 발표했다\"}", "가계", "부채", "대책", "을",
+                "발표", "하", "았", "다");
+        assertTokens(node, "{\"tokenizer\":{\"type\":\"fess_korean_tokenizer\",\"decompound_mode\":\"none\",\"eojeol_cache_size\":100,"
+                + "\"user_dictionary_rules\":[\"가계부채\"]},\"text\":\"가계부채 대책을\"}", "가계부채", "대책", "을");
+        // Vietnamese falls back to the standard tokenizer without the delegate
+        assertTokens(node, "{\"tokenizer\":\"fess_multilingual_tokenizer\",\"text\":\"我是中国人 Hà Nội là thủ đô 한국어\"}", "我", "是", "中国",
+                "人", "Hà", "Nội", "là", "thủ", "đô", "한국", "어");
+    }
+
+    @Test
+    public void test_lazy() throws Exception {
+
+        runner.ensureYellow();
+        final Node node = runner.node();
+
+        final String index = "lazy";
+        final String indexSettings = "{\"index\":{\"analysis\":{" + "\"tokenizer\":{"//
+                + "\"ko_dict\":{\"type\":\"fess_korean_tokenizer\",\"decompound_mode\":\"none\",\"user_dictionary_rules\":[\"가계부채\"]}"
+                + "},"//
+                + "\"analyzer\":{" + "\"ko_analyzer\":{\"type\":\"custom\",\"tokenizer\":\"ko_dict\"}" + "}"//
+                + "}}}";
+        runner.createIndex(index, Settings.builder().loadFromSource(indexSettings, XContentType.JSON).build());
+        runner.ensureYellow(index);
+
+        // no field uses the analyzer
+        assertFalse(getSharedInstances(node).toString(), getSharedInstances(node).keySet().stream().anyMatch(k -> k.startsWith("ko_user_dictionary#")));
+
+        try (CurlResponse response = FesenCurl.post(node, "/" + index + "/_analyze").header("Content-Type", "application/json")
+                .body("{\"text\":\"가계부채 대책을\",\"analyzer\":\"ko_analyzer\"}").execute()) {
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> tokens = (List<Map<String, Object>>) response.getContent(FesenCurl.jsonParser()).get("tokens");
+            assertEquals(tokens.toString(), 3, tokens.size());
+            assertEquals("가계부채", tokens.get(0).get("token"));
+            assertEquals(4, ((Number) tokens.get(0).get("end_offset")).intValue());
+            assertEquals(5, ((Number) tokens.get(1).get("start_offset")).intValue());
+        }
+        assertTrue(getSharedInstances(node).toString(), getSharedInstances(node).keySet().stream().anyMatch(k -> k.startsWith("ko_user_dictionary#")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getSharedInstances(final Node node) throws Exception {
+        return (Map<String, Object>) getNodeStats(node, "shared_instances").get("instances");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getNodeStats(final Node node, final String name) throws Exception {
+        try (CurlResponse response = FesenCurl.get(node, "/_fess/analysis/_stats").execute()) {
+            final Map<String, Object> content = response.getContent(FesenCurl.jsonParser());
+            final Map<String, Map<String, Object>> nodes = (Map<String, Map<String, Object>>) content.get("nodes");
+            return (Map<String, Object>) nodes.values().iterator().next().get(name);
+        }
+    }
+
+    @Test
+    public void test_pre_analyzed() throws Exception {
+
+        runner.ensureYellow();
+
+        final String pipeline = "{\"processors\":[{\"fess_analyze\":{\"field\":\"content\",\"ignore_missing\":true,"
+                + "\"tokenizer\":\"fess_simplified_chinese_tokenizer\"}}]}";
+        runner.client().admin().cluster().preparePutPipeline("fess", new BytesArray(pipeline), XContentType.JSON).get();
+        // created again with the analyzer built for the same definition
+        runner.client().admin().cluster().preparePutPipeline("fess", new BytesArray(pipeline), XContentType.JSON).get();
+
+        final String index = "pre_analyzed";
+        final String indexSettings = "{\"index\":{\"analysis\":{" + "\"analyzer\":{"//
+                + "\"pre\":{\"type\":\"custom\",\"tokenizer\":\"fess_pre_analyzed_tokenizer\"},"
+                + "\"pre_uppercase\":{\"type\":\"custom\",\"tokenizer\":\"fess_pre_analyzed_tokenizer\",\"filter\":[\"uppercase\"]},"
+                + "\"zh\":{\"type\":\"custom\",\"tokenizer\":\"fess_simplified_chinese_tokenizer\"},"
+                + "\"zh_uppercase\":{\"type\":\"custom\",\"tokenizer\":\"fess_simplified_chinese_tokenizer\",\"filter\":[\"uppercase\"]}"
+                + "}" + "}}}";
+        // queries are analyzed as the text the tokens were produced from
+        final String mapping = "{\"_source\":{\"excludes\":[\"content_tokens\"]},\"properties\":{\"content\":{\"type\":\"text\",\"index\":false},"
+                + "\"content_tokens\":{\"type\":\"text\",\"analyzer\":\"pre\",\"search_analyzer\":\"zh\","
+                + "\"fields\":{\"uppercase\":{\"type\":\"text\",\"analyzer\":\"pre_uppercase\",\"search_analyzer\":\"zh_uppercase\"}}}}}";
+        runner.client().admin().indices().prepareCreate(index).setSettings(indexSettings, XContentType.JSON)
+                .addMapping("_doc", mapping, XContentType.JSON).get();
+        runner.ensureYellow(index);
+
+        runner.client().prepareIndex(index, "_doc", "1").setSource("{\"content\":\"我是中国人 FESS\"}", XContentType.JSON)
+                .setPipeline("fess").get();
+        runner.client().prepareIndex(index, "_doc", "2").setSource("{\"title\":\"no content\"}", XContentType.JSON).setPipeline("fess")
+                .get();
+        runner.refresh();
+
+        assertEquals(1, runner.client().prepareSearch(index).setQuery(QueryBuilders.termQuery("content_tokens", "中国")).get().getHits()
+                .getTotalHits().value);
+        assertEquals(1, runner.client().prepareSearch(index).setQuery(QueryBuilders.matchPhraseQuery("content_tokens", "中国人")).get()
+                .getHits().getTotalHits().value);
+        assertEquals(0, runner.client().prepareSearch(index).setQuery(QueryBuilders.termQuery("content_tokens", "FESS")).get().getHits()
+                .getTotalHits().value);
+        assertEquals(1, runner.client().prepareSearch(index).setQuery(QueryBuilders.termQuery("content_tokens.uppercase", "FESS")).get()
+                .getHits().getTotalHits().value);
+        assertFalse(runner.client().prepareGet(index, "_doc", "1").get().getSourceAsMap().containsKey("content_tokens"));
+        assertFalse(runner.client().prepareGet(index, "_doc", "2").get().getSourceAsMap().containsKey("content_tokens"));
+        assertEquals(1, ((Number) getNodeStats(runner.node(), "analyze_processor").get("analyzers")).intValue());
+
+        // the analyzers no pipeline uses are closed
+        runner.client().admin().cluster()
+                .preparePutPipeline("fess", new BytesArray(pipeline.replace("fess_simplified_chinese_tokenizer", "standard")), XContentType.JSON)
+                .get();
+        runner.client().admin().cluster().prepareDeletePipeline("fess").get();
+        final Map<String, Object> stats = getNodeStats(runner.node(), "analyze_processor");
+        assertEquals(stats.toString(), 0, ((Number) stats.get("analyzers")).intValue());
+        assertEquals(stats.toString(), 2, ((Number) stats.get("evictions")).intValue());
+    }
+
+    private void assertTokens(final Node node, final String body, final String... expected) throws Exception {
+        try (CurlResponse response = FesenCurl.post(node, "/_analyze").header("Content-Type", "application/json").body(body).execute()) {
+            @SuppressWarnings("unchecked")
+            final List<Map<String, Object>> tokens =
+                    (List<Map<String, Object>>) response.getContent(FesenCurl.jsonParser()).get("tokens");
+            assertEquals(tokens.toString(), expected.length, tokens.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], tokens.get(i).get("token"));
+            }
+        }
     }
 
     private void assertDocCount(final int expected, final String index, final String field, final String value) {
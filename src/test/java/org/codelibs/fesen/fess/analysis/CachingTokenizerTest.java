@@ -0,0 +1,82 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.charfilter.MappingCharFilter;
+import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+public class CachingTokenizerTest {
+
+    @Test
+    public void test_tokenize() throws Exception {
+        final TokenCache cache = new TokenCache(10, 8);
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        builder.add("xx", "a");
+        final NormalizeCharMap charMap = builder.build();
+
+        // another tokenizer sharing the cache replays the same tokens
+        for (int i = 0; i < 3; i++) {
+            final CachingTokenizer tokenizer = new CachingTokenizer(new WhitespaceTokenizer(), cache);
+            final TokenStream stream = new LowerCaseFilter(tokenizer);
+            final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+            final OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+            final PositionIncrementAttribute posIncAtt = stream.getAttribute(PositionIncrementAttribute.class);
+            for (int j = 0; j < 2; j++) {
+                tokenizer.setReader(new MappingCharFilter(charMap, new StringReader("AA xxb C")));
+                stream.reset();
+                assertTrue(stream.incrementToken());
+                assertEquals("aa", termAtt.toString());
+                assertEquals(0, offsetAtt.startOffset());
+                assertEquals(1, posIncAtt.getPositionIncrement());
+                assertTrue(stream.incrementToken());
+                assertEquals("ab", termAtt.toString());
+                assertEquals(3, offsetAtt.startOffset());
+                assertEquals(6, offsetAtt.endOffset());
+                assertTrue(stream.incrementToken());
+                assertEquals("c", termAtt.toString());
+                assertFalse(stream.incrementToken());
+                stream.end();
+                assertEquals(8, offsetAtt.endOffset());
+                stream.close();
+            }
+        }
+        assertEquals(1, cache.getCount());
+        assertEquals(1, cache.getMisses());
+        assertEquals(5, cache.getHits());
+    }
+
+    @Test
+    public void test_longInput() throws Exception {
+        final TokenCache cache = new TokenCache(10, 8);
+        final CachingTokenizer tokenizer = new CachingTokenizer(new WhitespaceTokenizer(), cache);
+        final CharTermAttribute termAtt = tokenizer.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.getAttribute(OffsetAttribute.class);
+        for (int i = 0; i < 2; i++) {
+            tokenizer.setReader(new StringReader("abcdefgh ijk"));
+            tokenizer.reset();
+            assertTrue(tokenizer.incrementToken());
+            assertEquals("abcdefgh", termAtt.toString());
+            assertTrue(tokenizer.incrementToken());
+            assertEquals("ijk", termAtt.toString());
+            assertEquals(9, offsetAtt.startOffset());
+            assertEquals(12, offsetAtt.endOffset());
+            assertFalse(tokenizer.incrementToken());
+            tokenizer.end();
+            assertEquals(12, offsetAtt.endOffset());
+            tokenizer.close();
+        }
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getHits());
+    }
+}
@@ -0,0 +1,80 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+public class ChineseConvertCharFilterTest {
+
+    @Test
+    public void test_convert() throws Exception {
+        final ChineseConverter s2t = ChineseConverter.getInstance(ChineseConverter.Type.S2T);
+        assertEquals("臺灣的頭髮", s2t.convert("台湾的头发"));
+        assertEquals("abc 123", s2t.convert("abc 123"));
+
+        final ChineseConverter t2s = ChineseConverter.getInstance(ChineseConverter.Type.T2S);
+        assertEquals("台湾的头发", t2s.convert("臺灣的頭髮"));
+    }
+
+    @Test
+    public void test_charFilter() throws Exception {
+        final ChineseConverter converter = ChineseConverter.getInstance(ChineseConverter.Type.S2T);
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append("台湾").append(i).append(" 头发 ");
+        }
+        final String text = buf.toString();
+        final String expected = converter.convert(text);
+
+        final StringBuilder actual = new StringBuilder();
+        try (Reader reader = new ChineseConvertCharFilter(new StringReader(text), converter)) {
+            final char[] chars = new char[100];
+            int n;
+            while ((n = reader.read(chars, 0, chars.length)) != -1) {
+                actual.append(chars, 0, n);
+            }
+        }
+        assertEquals(expected, actual.toString());
+
+        actual.setLength(0);
+        try (Reader reader = new ChineseConvertCharFilter(new StringReader(text), converter)) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                actual.append((char) c);
+            }
+        }
+        assertEquals(expected, actual.toString());
+    }
+
+    @Test
+    public void test_offsets() throws Exception {
+        final ChineseConverter converter = ChineseConverter.getInstance(ChineseConverter.Type.S2T);
+        final Tokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new ChineseConvertCharFilter(new StringReader("台湾 头发 abc"), converter));
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        tokenizer.reset();
+        assertTrue(tokenizer.incrementToken());
+        assertEquals("臺灣", termAtt.toString());
+        assertEquals(0, offsetAtt.startOffset());
+        assertEquals(2, offsetAtt.endOffset());
+        assertTrue(tokenizer.incrementToken());
+        assertEquals("頭髮", termAtt.toString());
+        assertEquals(3, offsetAtt.startOffset());
+        assertEquals(5, offsetAtt.endOffset());
+        assertTrue(tokenizer.incrementToken());
+        assertEquals("abc", termAtt.toString());
+        assertFalse(tokenizer.incrementToken());
+        tokenizer.end();
+        tokenizer.close();
+    }
+}
@@ -0,0 +1,66 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.charfilter.MappingCharFilter;
+import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+public class ChunkingTokenizerTest {
+
+    @Test
+    public void test_tokenize() throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append("xxb").append(i).append(i % 7 == 0 ? "。\n" : " ");
+        }
+        final String text = buf.toString();
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        builder.add("xx", "a");
+        final NormalizeCharMap charMap = builder.build();
+
+        final Tokenizer expected = new WhitespaceTokenizer();
+        final Tokenizer actual = new ChunkingTokenizer(new WhitespaceTokenizer(), 256);
+        for (int i = 0; i < 2; i++) {
+            expected.setReader(new MappingCharFilter(charMap, new StringReader(text)));
+            actual.setReader(new MappingCharFilter(charMap, new StringReader(text)));
+            assertSameTokens(expected, actual);
+        }
+    }
+
+    private void assertSameTokens(final Tokenizer expected, final Tokenizer actual) throws Exception {
+        final CharTermAttribute expectedTerm = expected.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute expectedOffset = expected.getAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute expectedPosInc = expected.getAttribute(PositionIncrementAttribute.class);
+        final CharTermAttribute actualTerm = actual.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute actualOffset = actual.getAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute actualPosInc = actual.getAttribute(PositionIncrementAttribute.class);
+        expected.reset();
+        actual.reset();
+        int count = 0;
+        while (expected.incrementToken()) {
+            assertTrue(actual.incrementToken());
+            assertEquals(expectedTerm.toString(), actualTerm.toString());
+            assertEquals(expectedOffset.startOffset(), actualOffset.startOffset());
+            assertEquals(expectedOffset.endOffset(), actualOffset.endOffset());
+            assertEquals(expectedPosInc.getPositionIncrement(), actualPosInc.getPositionIncrement());
+            count++;
+        }
+        assertFalse(actual.incrementToken());
+        expected.end();
+        actual.end();
+        assertEquals(expectedOffset.endOffset(), actualOffset.endOffset());
+        expected.close();
+        actual.close();
+        assertEquals(1000, count);
+    }
+}
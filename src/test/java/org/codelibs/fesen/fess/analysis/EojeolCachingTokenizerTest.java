@@ -0,0 +1,77 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+import org.apache.lucene.analysis.ko.tokenattributes.PartOfSpeechAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.junit.Test;
+
+public class EojeolCachingTokenizerTest {
+
+    private static final String TEXT = "정부는 오늘 서울에서 가계부채 대책을 발표했다.  가계부채 증가세가 꺾일지 주목된다. 서울에서 열린 회의에는 전문가들이 참석했다.";
+
+    @Test
+    public void test_sameAsWholeText() throws Exception {
+        for (final KoreanTokenizer.DecompoundMode mode : KoreanTokenizer.DecompoundMode.values()) {
+            final TokenCache cache = new TokenCache(100, 16);
+            // part-of-speech tags can differ where the path depends on the previous eojeol
+            assertEquals(tokens(newTokenizer(mode), TEXT, false),
+                    tokens(new EojeolCachingTokenizer(newTokenizer(mode), cache), TEXT, false));
+            assertEquals(13, cache.getCount());
+            assertEquals(13, cache.getMisses());
+            assertEquals(2, cache.getHits());
+
+            // another tokenizer replays the cached tokens with their attributes
+            final String expected = tokens(new EojeolCachingTokenizer(newTokenizer(mode), new TokenCache(100, 16)), TEXT, true);
+            assertEquals(expected, tokens(new EojeolCachingTokenizer(newTokenizer(mode), cache), TEXT, true));
+            assertEquals(17, cache.getHits());
+        }
+    }
+
+    @Test
+    public void test_longEojeol() throws Exception {
+        final String text = "대한민국정부수립기념일 서울";
+        final TokenCache cache = new TokenCache(100, 4);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(tokens(newTokenizer(KoreanTokenizer.DEFAULT_DECOMPOUND), text, false),
+                    tokens(new EojeolCachingTokenizer(newTokenizer(KoreanTokenizer.DEFAULT_DECOMPOUND), cache), text, false));
+        }
+        assertEquals(1, cache.getCount());
+        assertEquals(1, cache.getHits());
+        assertEquals("", tokens(new EojeolCachingTokenizer(newTokenizer(KoreanTokenizer.DEFAULT_DECOMPOUND), cache), " \n ", false));
+    }
+
+    private static Tokenizer newTokenizer(final KoreanTokenizer.DecompoundMode mode) {
+        return new KoreanTokenizer(Tokenizer.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, null, mode, false, true);
+    }
+
+    private static String tokens(final Tokenizer tokenizer, final String text, final boolean partOfSpeech) throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        final CharTermAttribute termAtt = tokenizer.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.getAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute posIncAtt = tokenizer.getAttribute(PositionIncrementAttribute.class);
+        final PositionLengthAttribute posLenAtt = tokenizer.getAttribute(PositionLengthAttribute.class);
+        final PartOfSpeechAttribute posAtt = tokenizer.getAttribute(PartOfSpeechAttribute.class);
+        tokenizer.setReader(new StringReader(text));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            buf.append(termAtt).append('/').append(posIncAtt.getPositionIncrement()).append('/').append(posLenAtt.getPositionLength())
+                    .append('/').append(offsetAtt.startOffset()).append('-').append(offsetAtt.endOffset());
+            if (partOfSpeech) {
+                buf.append('/').append(posAtt.getLeftPOS()).append('/').append(posAtt.getRightPOS());
+            }
+            buf.append(' ');
+        }
+        tokenizer.end();
+        assertEquals(text.length(), offsetAtt.endOffset());
+        tokenizer.close();
+        return buf.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.ja.JapaneseAnalyzer;
+import org.apache.lucene.analysis.ja.JapaneseBaseFormFilter;
+import org.apache.lucene.analysis.ja.JapaneseKatakanaStemFilter;
+import org.apache.lucene.analysis.ja.JapanesePartOfSpeechStopFilter;
+import org.apache.lucene.analysis.ja.JapaneseReadingFormFilter;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ja.dict.UserDictionary;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+public class FusedJapaneseFilterTest {
+
+    private static final String TEXT = "関西国際空港から東京スカイツリーへ行きました。これは美しい花です。コンピューターとサーバーを使った。";
+
+    @Test
+    public void test_sameAsStackedFilters() throws Exception {
+        final Set<String> tags = new HashSet<>(JapaneseAnalyzer.getDefaultStopTags());
+        tags.add("カスタム名詞");
+        final UserDictionary userDictionary =
+                UserDictionary.open(new StringReader("東京スカイツリー,東京 スカイツリー,トウキョウ スカイツリー,カスタム名詞\n"));
+        final PartOfSpeechStopTags stopTags = new PartOfSpeechStopTags(tags);
+
+        for (final UserDictionary dictionary : new UserDictionary[] { null, userDictionary }) {
+            for (final boolean useRomaji : new boolean[] { false, true }) {
+                for (final int minimumLength : new int[] { FusedJapaneseFilter.DEFAULT_MINIMUM_LENGTH, 2 }) {
+                    final Tokenizer expectedTokenizer = new JapaneseTokenizer(dictionary, true, JapaneseTokenizer.Mode.SEARCH);
+                    expectedTokenizer.setReader(new StringReader(TEXT));
+                    TokenStream expected = new JapaneseBaseFormFilter(expectedTokenizer);
+                    expected = new JapanesePartOfSpeechStopFilter(expected, tags);
+                    expected = new JapaneseReadingFormFilter(expected, useRomaji);
+                    expected = new JapaneseKatakanaStemFilter(expected, minimumLength);
+
+                    final Tokenizer actualTokenizer = new JapaneseTokenizer(dictionary, true, JapaneseTokenizer.Mode.SEARCH);
+                    actualTokenizer.setReader(new StringReader(TEXT));
+                    final TokenStream actual = FusedJapaneseFilter.create(actualTokenizer, stopTags, useRomaji, minimumLength);
+                    assertTrue(actual instanceof FusedJapaneseFilter);
+
+                    assertEquals(tokens(expected), tokens(actual));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_notKuromoji() throws Exception {
+        final PartOfSpeechStopTags stopTags = new PartOfSpeechStopTags(JapaneseAnalyzer.getDefaultStopTags());
+        assertNull(FusedJapaneseFilter.create(new WhitespaceTokenizer(), stopTags, false, FusedJapaneseFilter.DEFAULT_MINIMUM_LENGTH));
+    }
+
+    private String tokens(final TokenStream stream) throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute posIncAtt = stream.getAttribute(PositionIncrementAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()) {
+            buf.append(termAtt).append('/').append(posIncAtt.getPositionIncrement()).append('/').append(offsetAtt.startOffset())
+                    .append('-').append(offsetAtt.endOffset()).append(' ');
+        }
+        stream.end();
+        stream.close();
+        assertFalse(buf.length() == 0);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.charfilter.MappingCharFilter;
+import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.miscellaneous.KeywordMarkerFilter;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+public class InstrumentedTokenizerTest {
+
+    @Test
+    public void test_tokenize() throws Exception {
+        final AnalysisMetrics metrics = new AnalysisMetrics();
+        final InstrumentedTokenizer tokenizer = new InstrumentedTokenizer(new WhitespaceTokenizer(), metrics);
+        final TokenStream stream = new KeywordMarkerFilter(new LowerCaseFilter(tokenizer)) {
+            @Override
+            protected boolean isKeyword() {
+                return "aa".equals(getAttribute(CharTermAttribute.class).toString());
+            }
+        };
+        final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = stream.getAttribute(OffsetAttribute.class);
+        final KeywordAttribute keywordAtt = stream.getAttribute(KeywordAttribute.class);
+
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        builder.add("xx", "a");
+        final NormalizeCharMap charMap = builder.build();
+        for (int i = 0; i < 2; i++) {
+            tokenizer.setReader(new MappingCharFilter(charMap, new StringReader("AA xxb C")));
+            stream.reset();
+            assertTrue(stream.incrementToken());
+            assertEquals("aa", termAtt.toString());
+            assertTrue(keywordAtt.isKeyword());
+            assertTrue(stream.incrementToken());
+            assertEquals("ab", termAtt.toString());
+            assertFalse(keywordAtt.isKeyword());
+            assertEquals(3, offsetAtt.startOffset());
+            assertEquals(6, offsetAtt.endOffset());
+            assertTrue(stream.incrementToken());
+            assertEquals("c", termAtt.toString());
+            assertFalse(stream.incrementToken());
+            stream.end();
+            assertEquals(8, offsetAtt.endOffset());
+            stream.close();
+        }
+
+        assertEquals(1, metrics.getCreatedStreams());
+        assertEquals(2, metrics.getCompletedInputs());
+        assertEquals(0, metrics.getActiveInputs());
+        assertEquals(6, metrics.getTokens());
+        assertEquals(14, metrics.getInputChars());
+    }
+}
@@ -0,0 +1,186 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.cn.smart.HMMChineseTokenizer;
+import org.apache.lucene.analysis.ja.JapaneseBaseFormFilter;
+import org.apache.lucene.analysis.ja.JapanesePartOfSpeechStopFilter;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.codelibs.fesen.fess.analysis.MultilingualTokenizer.Language;
+import org.junit.Test;
+
+public class MultilingualTokenizerTest {
+
+    private final List<Language> created = new ArrayList<>();
+
+    private Tokenizer createTokenizer(final Language language) {
+        created.add(language);
+        switch (language) {
+        case JAPANESE:
+            return new JapaneseTokenizer(null, true, JapaneseTokenizer.Mode.NORMAL);
+        case CHINESE:
+            return new HMMChineseTokenizer();
+        default:
+            // nori is not a test dependency
+            return new StandardTokenizer();
+        }
+    }
+
+    @Test
+    public void test_routing() throws Exception {
+        final String text = "Tiếng Việt là ngôn ngữ của người Việt. 我们是中国人。한국어 형태소 분석기 and English text.";
+        final List<String> tokens = tokenize(new MultilingualTokenizer(this::createTokenizer), text);
+        assertTrue(tokens.toString(), tokens.contains("tiếng"));
+        assertTrue(tokens.toString(), tokens.contains("ngữ"));
+        assertTrue(tokens.toString(), tokens.contains("中国"));
+        assertTrue(tokens.toString(), tokens.contains("한국어"));
+        assertTrue(tokens.toString(), tokens.contains("english"));
+        assertEquals(List.of(Language.VIETNAMESE, Language.CHINESE, Language.KOREAN, Language.OTHER), created);
+    }
+
+    @Test
+    public void test_japanese() throws Exception {
+        // kanji without kana are Japanese in a text with kana
+        final String text = "東京都に住んでいます。関西国際空港 iPhoneを買った";
+        final List<String> tokens = tokenize(new MultilingualTokenizer(this::createTokenizer), text);
+        assertTrue(tokens.toString(), tokens.contains("住ん"));
+        assertTrue(tokens.toString(), tokens.contains("iphone"));
+        assertEquals(List.of(Language.JAPANESE, Language.OTHER), created);
+    }
+
+    @Test
+    public void test_reuse() throws Exception {
+        final MultilingualTokenizer tokenizer = new MultilingualTokenizer(this::createTokenizer);
+        final List<String> first = tokenize(tokenizer, "我们是中国人。한국어 형태소");
+        assertEquals(first, tokenize(tokenizer, "我们是中国人。한국어 형태소"));
+        // created once per language
+        assertEquals(List.of(Language.CHINESE, Language.KOREAN), created);
+        assertTrue(tokenize(tokenizer, "").isEmpty());
+    }
+
+    @Test
+    public void test_attributes() throws Exception {
+        // the part of speech and base form of kuromoji reach the filters after the tokenizer
+        final MultilingualTokenizer tokenizer = new MultilingualTokenizer(this::createTokenizer);
+        final TokenStream stream = new JapaneseBaseFormFilter(
+                new JapanesePartOfSpeechStopFilter(tokenizer, new HashSet<>(Arrays.asList("助詞-格助詞-一般", "助詞-接続助詞"))));
+        final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+        final PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+        final List<String> tokens = new ArrayList<>();
+        final List<Integer> positionIncrements = new ArrayList<>();
+        tokenizer.setReader(new StringReader("我们是中国人。東京に住んでいます"));
+        stream.reset();
+        while (stream.incrementToken()) {
+            tokens.add(termAtt.toString());
+            positionIncrements.add(posIncAtt.getPositionIncrement());
+        }
+        stream.end();
+        stream.close();
+        assertTrue(tokens.toString(), tokens.contains("住む"));
+        assertFalse(tokens.toString(), tokens.contains("に"));
+        assertEquals(2, positionIncrements.get(tokens.indexOf("住む")).intValue());
+    }
+
+    @Test
+    public void test_endPositionIncrement() throws Exception {
+        final MultilingualTokenizer tokenizer = new MultilingualTokenizer(language -> {
+            if (language != Language.OTHER) {
+                return createTokenizer(language);
+            }
+            // a word per run that ends the run with a hole, as a tokenizer that drops trailing tokens does
+            return new Tokenizer() {
+                private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+
+                private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+                private boolean done;
+
+                @Override
+                public boolean incrementToken() throws IOException {
+                    if (done) {
+                        return false;
+                    }
+                    clearAttributes();
+                    final char[] buffer = new char[64];
+                    final int length = input.read(buffer);
+                    termAtt.copyBuffer(buffer, 0, Math.max(length, 0));
+                    done = true;
+                    return true;
+                }
+
+                @Override
+                public void reset() throws IOException {
+                    super.reset();
+                    done = false;
+                }
+
+                @Override
+                public void end() throws IOException {
+                    super.end();
+                    posIncAtt.setPositionIncrement(2);
+                }
+            };
+        });
+        final PositionIncrementAttribute posIncAtt = tokenizer.getAttribute(PositionIncrementAttribute.class);
+        tokenizer.setReader(new StringReader("english 中国"));
+        tokenizer.reset();
+        assertTrue(tokenizer.incrementToken());
+        assertEquals(1, posIncAtt.getPositionIncrement());
+        assertTrue(tokenizer.incrementToken());
+        assertEquals(3, posIncAtt.getPositionIncrement());
+        assertFalse(tokenizer.incrementToken());
+        tokenizer.end();
+        assertEquals(0, posIncAtt.getPositionIncrement());
+        tokenizer.close();
+
+        tokenizer.setReader(new StringReader("中国 english"));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            // consume
+        }
+        tokenizer.end();
+        assertEquals(2, posIncAtt.getPositionIncrement());
+        tokenizer.close();
+    }
+
+    /**
+     * Returns the lower-cased words, checking that each word's offsets point at its text.
+     */
+    private List<String> tokenize(final Tokenizer tokenizer, final String text) throws Exception {
+        final List<String> tokens = new ArrayList<>();
+        final CharTermAttribute termAtt = tokenizer.getAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.getAttribute(OffsetAttribute.class);
+        tokenizer.setReader(new StringReader(text));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            final String term = termAtt.toString();
+            assertFalse(term.isEmpty());
+            if (!Character.isLetterOrDigit(term.codePointAt(0))) {
+                // smartcn emits punctuation as a comma
+                continue;
+            }
+            assertEquals(term.toLowerCase(Locale.ROOT), text.substring(offsetAtt.startOffset(), offsetAtt.endOffset()).toLowerCase(Locale.ROOT));
+            tokens.add(term.toLowerCase(Locale.ROOT));
+        }
+        tokenizer.end();
+        assertEquals(text.length(), offsetAtt.endOffset());
+        tokenizer.close();
+        return tokens;
+    }
+}
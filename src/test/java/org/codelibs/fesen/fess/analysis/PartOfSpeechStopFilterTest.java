@@ -0,0 +1,67 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.ja.JapaneseAnalyzer;
+import org.apache.lucene.analysis.ja.JapanesePartOfSpeechStopFilter;
+import org.apache.lucene.analysis.ja.JapaneseTokenizer;
+import org.apache.lucene.analysis.ja.dict.TokenInfoDictionary;
+import org.apache.lucene.analysis.ja.dict.UserDictionary;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.Test;
+
+public class PartOfSpeechStopFilterTest {
+
+    private static final String TEXT = "関西国際空港から東京へ行きました。これは美しい花です。";
+
+    @Test
+    public void test_filter() throws Exception {
+        final Set<String> tags = new HashSet<>(JapaneseAnalyzer.getDefaultStopTags());
+        tags.add("カスタム名詞");
+        final UserDictionary userDictionary =
+                UserDictionary.open(new StringReader("関西国際空港,関西 国際 空港,カンサイ コクサイ クウコウ,カスタム名詞\n"));
+        final PartOfSpeechStopTags stopTags = new PartOfSpeechStopTags(tags);
+
+        for (final UserDictionary dictionary : new UserDictionary[] { null, userDictionary }) {
+            final Tokenizer expectedTokenizer = new JapaneseTokenizer(dictionary, true, JapaneseTokenizer.Mode.SEARCH);
+            expectedTokenizer.setReader(new StringReader(TEXT));
+            final Tokenizer actualTokenizer = new JapaneseTokenizer(dictionary, true, JapaneseTokenizer.Mode.SEARCH);
+            actualTokenizer.setReader(new StringReader(TEXT));
+            final TokenStream actual = stopTags.create(actualTokenizer);
+            assertTrue(actual instanceof PartOfSpeechStopFilter);
+            assertEquals(terms(new JapanesePartOfSpeechStopFilter(expectedTokenizer, tags)), terms(actual));
+        }
+        assertNotNull(stopTags.getBitSet(TokenInfoDictionary.getInstance()));
+        assertNull(stopTags.getBitSet(userDictionary));
+    }
+
+    @Test
+    public void test_noPartOfSpeech() throws Exception {
+        final PartOfSpeechStopTags stopTags = new PartOfSpeechStopTags(JapaneseAnalyzer.getDefaultStopTags());
+        assertNull(stopTags.create(new WhitespaceTokenizer()));
+    }
+
+    private String terms(final TokenStream stream) throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        final CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()) {
+            buf.append(termAtt).append(' ');
+        }
+        stream.end();
+        stream.close();
+        assertFalse(buf.length() == 0);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.charfilter.MappingCharFilter;
+import org.apache.lucene.analysis.charfilter.NormalizeCharMap;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+public class PooledTokenizerTest {
+
+    @Test
+    public void test_reuse() throws Exception {
+        final TokenizerPool pool = new TokenizerPool(WhitespaceTokenizer::new, 1);
+        final NormalizeCharMap.Builder builder = new NormalizeCharMap.Builder();
+        builder.add("xx", "a");
+        final NormalizeCharMap charMap = builder.build();
+        for (int i = 0; i < 3; i++) {
+            final Tokenizer tokenizer = new PooledTokenizer(pool);
+            final CharTermAttribute termAtt = tokenizer.getAttribute(CharTermAttribute.class);
+            final OffsetAttribute offsetAtt = tokenizer.getAttribute(OffsetAttribute.class);
+            tokenizer.setReader(new MappingCharFilter(charMap, new StringReader("xxb c")));
+            tokenizer.reset();
+            assertTrue(tokenizer.incrementToken());
+            assertEquals("ab", termAtt.toString());
+            assertEquals(0, offsetAtt.startOffset());
+            assertEquals(3, offsetAtt.endOffset());
+            assertTrue(tokenizer.incrementToken());
+            assertEquals("c", termAtt.toString());
+            assertEquals(4, offsetAtt.startOffset());
+            assertEquals(5, offsetAtt.endOffset());
+            assertFalse(tokenizer.incrementToken());
+            tokenizer.end();
+            assertEquals(5, offsetAtt.endOffset());
+            tokenizer.close();
+        }
+        assertEquals(1, pool.getCreated());
+        pool.close();
+    }
+
+    @Test
+    public void test_clearAttributes() throws Exception {
+        final TokenizerPool pool = new TokenizerPool(WhitespaceTokenizer::new, 1);
+        final Tokenizer tokenizer = new PooledTokenizer(pool);
+        // set by a downstream filter, and not by the pooled tokenizer
+        final KeywordAttribute keywordAtt = tokenizer.addAttribute(KeywordAttribute.class);
+        tokenizer.setReader(new StringReader("a b"));
+        tokenizer.reset();
+        assertTrue(tokenizer.incrementToken());
+        keywordAtt.setKeyword(true);
+        assertTrue(tokenizer.incrementToken());
+        assertFalse(keywordAtt.isKeyword());
+        tokenizer.end();
+        tokenizer.close();
+        pool.close();
+    }
+
+    @Test
+    public void test_maxSize() throws Exception {
+        final TokenizerPool pool = new TokenizerPool(WhitespaceTokenizer::new, 1);
+        final Tokenizer tokenizer1 = new PooledTokenizer(pool);
+        final Tokenizer tokenizer2 = new PooledTokenizer(pool);
+        tokenizer1.setReader(new StringReader("a"));
+        tokenizer1.reset();
+        tokenizer2.setReader(new StringReader("b"));
+        tokenizer2.reset();
+        assertEquals(2, pool.getCreated());
+        tokenizer1.close();
+        tokenizer2.close();
+
+        // one of the two was kept
+        tokenizer1.setReader(new StringReader("c"));
+        tokenizer1.reset();
+        tokenizer2.setReader(new StringReader("d"));
+        tokenizer2.reset();
+        assertEquals(3, pool.getCreated());
+        tokenizer1.close();
+        tokenizer2.close();
+        pool.close();
+    }
+
+    @Test
+    public void test_close() throws Exception {
+        final TokenizerPool pool = new TokenizerPool(WhitespaceTokenizer::new, 1);
+        final Tokenizer tokenizer = new PooledTokenizer(pool);
+        // the index was closed while the stream was in use
+        pool.close();
+        final CharTermAttribute termAtt = tokenizer.getAttribute(CharTermAttribute.class);
+        for (int i = 0; i < 2; i++) {
+            tokenizer.setReader(new StringReader("a"));
+            tokenizer.reset();
+            assertTrue(tokenizer.incrementToken());
+            assertEquals("a", termAtt.toString());
+            assertFalse(tokenizer.incrementToken());
+            tokenizer.end();
+            tokenizer.close();
+        }
+        assertEquals(3, pool.getCreated());
+        assertEquals(0, pool.getReused());
+    }
+}
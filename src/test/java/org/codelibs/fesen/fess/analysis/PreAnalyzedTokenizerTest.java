@@ -0,0 +1,96 @@
+package org.codelibs.fesen.fess.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Base64;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.ko.KoreanTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionLengthAttribute;
+import org.junit.Test;
+
+public class PreAnalyzedTokenizerTest {
+
+    @Test
+    public void test_replay() throws Exception {
+        // mixed decompounding yields tokens of position length 2 and of position increment 0
+        final String text = "정부는 오늘 가계부채 대책을 발표했다.  ";
+        final Tokenizer tokenizer = new KoreanTokenizer(Tokenizer.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, null,
+                KoreanTokenizer.DecompoundMode.MIXED, false, true);
+        tokenizer.setReader(new StringReader(text));
+        final String expected = tokens(new KoreanTokenizer(Tokenizer.DEFAULT_TOKEN_ATTRIBUTE_FACTORY, null,
+                KoreanTokenizer.DecompoundMode.MIXED, false, true), text);
+        final String encoded;
+        try (TokenStream stream = tokenizer) {
+            encoded = PreAnalyzedTokenizer.encode(stream);
+        }
+        assertEquals(expected, tokens(new PreAnalyzedTokenizer(), encoded));
+        assertEquals(expected, tokens(new PreAnalyzedTokenizer(), encoded));
+    }
+
+    @Test
+    public void test_empty() throws Exception {
+        final Tokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader("   "));
+        final String encoded;
+        try (TokenStream stream = tokenizer) {
+            encoded = PreAnalyzedTokenizer.encode(stream);
+        }
+        final Tokenizer replay = new PreAnalyzedTokenizer();
+        replay.setReader(new StringReader(encoded));
+        replay.reset();
+        assertFalse(replay.incrementToken());
+        replay.end();
+        assertEquals(3, replay.getAttribute(OffsetAttribute.class).endOffset());
+        replay.close();
+
+        replay.setReader(new StringReader(""));
+        replay.reset();
+        assertFalse(replay.incrementToken());
+        replay.end();
+        assertEquals(0, replay.getAttribute(OffsetAttribute.class).endOffset());
+        replay.close();
+    }
+
+    @Test
+    public void test_invalid() throws Exception {
+        for (final String input : new String[] { "東京", "AA==", Base64.getEncoder().encodeToString(new byte[] { 2, 0, 0 }) }) {
+            final Tokenizer tokenizer = new PreAnalyzedTokenizer();
+            tokenizer.setReader(new StringReader(input));
+            try {
+                tokenizer.reset();
+                fail(input);
+            } catch (final IllegalArgumentException e) {
+                // expected
+            } finally {
+                tokenizer.close();
+            }
+        }
+    }
+
+    private static String tokens(final Tokenizer tokenizer, final String text) throws Exception {
+        final StringBuilder buf = new StringBuilder();
+        final CharTermAttribute termAtt = tokenizer.addAttribute(CharTermAttribute.class);
+        final OffsetAttribute offsetAtt = tokenizer.addAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute posIncAtt = tokenizer.addAttribute(PositionIncrementAttribute.class);
+        final PositionLengthAttribute posLenAtt = tokenizer.addAttribute(PositionLengthAttribute.class);
+        tokenizer.setReader(new StringReader(text));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            buf.append(termAtt).append('/').append(posIncAtt.getPositionIncrement()).append('/').append(posLenAtt.getPositionLength())
+                    .append('/').append(offsetAtt.startOffset()).append('-').append(offsetAtt.endOffset()).append(' ');
+        }
+        tokenizer.end();
+        buf.append(offsetAtt.endOffset());
+        tokenizer.close();
+        return buf.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package org.codelibs.fesen.fess.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnalysisManifestTest {
+
+    private static final String KUROMOJI = "org.codelibs.fesen.extension.analysis.ReloadableKuromojiTokenizerFactory";
+
+    private static final String NORI = "org.codelibs.fesen.plugin.analysis.nori.NoriTokenizerFactory";
+
+    private Path tempDir;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDirectory("manifest");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void test_storeAndLoad() throws Exception {
+        final Path path = tempDir.resolve("fess").resolve(AnalysisManifest.FILE_NAME);
+        final Path userDictionary = tempDir.resolve("userdict_ja.txt");
+
+        final AnalysisManifest manifest = new AnalysisManifest(path);
+        assertFalse(manifest.isDirty());
+        manifest.add("ja", KUROMOJI, userDictionary, "index1");
+        manifest.add("ja", KUROMOJI, userDictionary, "index2");
+        manifest.add("ko", NORI, null, "index2");
+        assertTrue(manifest.isDirty());
+        manifest.store();
+        assertFalse(manifest.isDirty());
+        assertTrue(Files.exists(path));
+
+        // index1 was removed while the node was down
+        final AnalysisManifest loaded = new AnalysisManifest(path);
+        loaded.load(Set.of("index2"));
+        assertEquals(2, loaded.getEntries().size());
+        for (final AnalysisManifest.Entry entry : loaded.getEntries()) {
+            assertEquals(Set.of("index2"), entry.getIndices());
+            if (KUROMOJI.equals(entry.getDelegate())) {
+                assertEquals(userDictionary, entry.getUserDictionary());
+            } else {
+                assertEquals(NORI, entry.getDelegate());
+                assertNull(entry.getUserDictionary());
+            }
+        }
+        assertTrue(loaded.isDirty());
+
+        // no entries of indices not on this node
+        final AnalysisManifest other = new AnalysisManifest(path);
+        other.load(Set.of("index3"));
+        assertTrue(other.getEntries().isEmpty());
+    }
+
+    @Test
+    public void test_removeIndex() throws Exception {
+        final AnalysisManifest manifest = new AnalysisManifest(tempDir.resolve(AnalysisManifest.FILE_NAME));
+        manifest.add("ja", KUROMOJI, null, "index1");
+        manifest.add("ja", KUROMOJI, null, "index2");
+        manifest.add("ko", NORI, null, "index1");
+        manifest.store();
+
+        manifest.removeIndex("index3");
+        assertFalse(manifest.isDirty());
+        manifest.removeIndex("index1");
+        assertTrue(manifest.isDirty());
+        assertEquals(1, manifest.getEntries().size());
+        assertEquals(KUROMOJI, manifest.getEntries().iterator().next().getDelegate());
+
+        manifest.store();
+        final AnalysisManifest loaded = new AnalysisManifest(tempDir.resolve(AnalysisManifest.FILE_NAME));
+        loaded.load(Set.of("index1", "index2"));
+        assertEquals(1, loaded.getEntries().size());
+        assertFalse(loaded.isDirty());
+    }
+}